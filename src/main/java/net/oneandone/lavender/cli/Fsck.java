@@ -16,6 +16,7 @@
 package net.oneandone.lavender.cli;
 
 import com.jcraft.jsch.JSchException;
+import net.oneandone.inline.ArgumentException;
 import net.oneandone.lavender.config.Cluster;
 import net.oneandone.lavender.config.Connection;
 import net.oneandone.lavender.config.Docroot;
@@ -26,76 +27,101 @@ import net.oneandone.lavender.index.Label;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.file.FileNode;
 import net.oneandone.sushi.fs.ssh.SshNode;
-import net.oneandone.sushi.io.OS;
-import net.oneandone.sushi.util.Separator;
+import net.oneandone.sushi.launcher.Launcher;
 import net.oneandone.sushi.util.Strings;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Checks all hosts of a cluster in parallel, one thread per host. Index files are compared across hosts by digest, so only
+ * one index is kept in memory at a time.
+ */
 public class Fsck extends Base {
     private final boolean md5check;
+    private final int md5Shards;
+    private final boolean full;
     private final boolean mac;
     private final boolean gc;
     private final boolean repairAllIdx;
     private final Cluster cluster;
+    /** where to persist FsckState; null if md5 sums are not checked */
+    private final FileNode stateRoot;
 
-    public Fsck(Globals globals, boolean md5check, boolean gc, boolean mac, boolean repairAllIdx, String clusterName) throws IOException, URISyntaxException {
+    public Fsck(Globals globals, boolean md5check, int md5Shards, boolean full, boolean gc, boolean mac, boolean repairAllIdx, String clusterName) throws IOException, URISyntaxException {
         super(globals);
+        if (md5Shards < 1) {
+            throw new ArgumentException("invalid number of md5 shards: " + md5Shards);
+        }
         this.md5check = md5check;
+        this.md5Shards = md5Shards;
+        this.full = full;
         this.mac = mac;
         this.gc = gc;
         this.repairAllIdx = repairAllIdx;
         this.cluster = globals.network().get(clusterName);
+        this.stateRoot = md5check ? globals.cacheroot().join("fsck") : null;
     }
 
     public void run() throws IOException {
-        Node docrootNode;
+        long started;
         boolean problem;
-        Map<String, Index> prevIndexes;
-        Map<String, Index> indexes;
-        Index left;
-        Index right;
-
+        List<Connection> connections;
+        ExecutorService executor;
+        List<Future<List<Check>>> futures;
+        List<List<Check>> hosts;
+        Check check;
+        Check prev;
+
+        started = System.currentTimeMillis();
         problem = false;
+        hosts = new ArrayList<>();
         try (Pool pool = globals.pool()) {
-            for (Docroot docroot : cluster.docroots()) {
-                prevIndexes = null;
-                for (Connection connection : cluster.connect(pool)) {
-                    console.info.println(connection.getHost() + " " + docroot.getName());
-                    docrootNode = docroot.node(connection);
-                    if (docrootNode.exists()) {
-                        indexes = filesAndReferences(connection, docrootNode, docroot);
-                        if (indexes == null) {
-                            problem = true;
-                        } else {
-                            if (prevIndexes != null) {
-                                if (!prevIndexes.keySet().equals(indexes.keySet())) {
-                                    console.error.println("index file list differs: " + prevIndexes.keySet() + " vs " + indexes.keySet());
-                                    problem = true;
-                                } else {
-                                    for (String name : prevIndexes.keySet()) {
-                                        left = prevIndexes.get(name);
-                                        right = indexes.get(name);
-                                        if (!left.equals(right)) {
-                                            console.error.println("index files differ: " + name);
-                                            problem = true;
-                                        }
-                                    }
-                                }
-                            }
-                            prevIndexes = indexes;
-                        }
+            connections = cluster.connect(pool);
+            executor = Executors.newFixedThreadPool(Math.max(1, connections.size()));
+            try {
+                futures = new ArrayList<>();
+                for (Connection connection : connections) {
+                    futures.add(executor.submit(() -> checkHost(connection)));
+                }
+                for (Future<List<Check>> future : futures) {
+                    hosts.add(get(future));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        for (int i = 0; i < cluster.docroots().size(); i++) {
+            prev = null;
+            for (List<Check> host : hosts) {
+                check = host.get(i);
+                if (check.problem) {
+                    problem = true;
+                } else if (check.digests != null) {
+                    if (prev != null && !prev.sameIndexes(check)) {
+                        problem = true;
                     }
+                    prev = check;
                 }
             }
         }
+        console.info.println("fsck: " + (System.currentTimeMillis() - started) + " ms");
         if (problem) {
             throw new IOException("FSCK FAILED");
         } else {
@@ -103,28 +129,113 @@ public class Fsck extends Base {
         }
     }
 
-    /** @return Indexes on this docroot (file name mapped to Index object). Null if a problem was detected. */
-    private Map<String, Index> filesAndReferences(Connection connection, Node docroot, Docroot docrootObj) throws IOException {
+    private List<Check> checkHost(Connection connection) throws IOException {
+        List<Check> result;
+        String prefix;
+        Node docrootNode;
+        Map<String, String> digests;
+
+        result = new ArrayList<>();
+        for (Docroot docroot : cluster.docroots()) {
+            prefix = connection.getHost().getName() + " " + docroot.getName() + ": ";
+            console.info.println(prefix + "started");
+            docrootNode = docroot.node(connection);
+            if (docrootNode.exists()) {
+                digests = filesAndReferences(prefix, connection, docrootNode, docroot);
+                result.add(new Check(prefix, digests, digests == null));
+            } else {
+                console.info.println(prefix + "no docroot");
+                result.add(new Check(prefix, null, false));
+            }
+        }
+        return result;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        Throwable cause;
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /** Result of checking one docroot on one host */
+    private class Check {
+        public final String prefix;
+        /** index file names mapped to index digests; null if the docroot does not exist or a problem was detected */
+        public final Map<String, String> digests;
+        public final boolean problem;
+
+        Check(String prefix, Map<String, String> digests, boolean problem) {
+            this.prefix = prefix;
+            this.digests = digests;
+            this.problem = problem;
+        }
+
+        public boolean sameIndexes(Check other) {
+            boolean result;
+
+            if (!digests.keySet().equals(other.digests.keySet())) {
+                console.error.println(other.prefix + "index file list differs: " + digests.keySet() + " vs " + other.digests.keySet());
+                return false;
+            }
+            result = true;
+            for (Map.Entry<String, String> entry : digests.entrySet()) {
+                if (!entry.getValue().equals(other.digests.get(entry.getKey()))) {
+                    console.error.println(other.prefix + "index files differ: " + entry.getKey());
+                    result = false;
+                }
+            }
+            return result;
+        }
+    }
+
+    /** @return Indexes on this docroot (file name mapped to Index digest). Null if a problem was detected. */
+    private Map<String, String> filesAndReferences(String prefix, Connection connection, Node docroot, Docroot docrootObj) throws IOException {
         boolean problem;
+        long started;
         Set<String> references;
-        List<String> files;
+        Set<String> files;
         Index index;
-        List<String> tmp;
+        Set<String> dangling;
+        List<String> unreferenced;
         Index all;
-        Map<String, Index> result;
+        Map<String, String> result;
+        FsckState state;
 
         result = new HashMap<>();
         problem = false;
         references = new HashSet<>();
-        console.verbose.println("  docroot "  + docroot.getUri().toString());
-        console.info.print("  files: ");
-        files = find(docroot, "-type", "f");
-        console.info.println(files.size());
-        console.info.print("  references: ");
+        console.verbose.println(prefix + "docroot "  + docroot.getUri().toString());
+        started = System.currentTimeMillis();
+        files = new HashSet<>();
+        if (md5check && !mac) {
+            state = loadState(prefix, connection, docrootObj);
+            find(docroot, line -> files.add(state.stat(line)), "-type", "f", "-printf", "%s %T@ %P\\n");
+        } else {
+            // find -printf is not available on Mac OS
+            state = null;
+            find(docroot, files::add, "-type", "f");
+        }
+        console.info.println(prefix + "files: " + files.size() + " (" + (System.currentTimeMillis() - started) + " ms)");
+        started = System.currentTimeMillis();
         all = new Index();
         for (Node file : docrootObj.indexList(connection)) {
             index = Index.load(file);
-            result.put(file.getName(), index);
+            result.put(file.getName(), Hex.encodeString(index.digest()));
             try {
                 for (Label label : index) {
                     references.add(label.getLavendelizedPath());
@@ -134,43 +245,54 @@ public class Fsck extends Base {
                 throw new IllegalStateException(file.getUri() + ": " + e.getMessage(), e);
             }
         }
-        console.info.println(references.size());
-        tmp = new ArrayList<>(references);
-        tmp.removeAll(files);
-        console.error.println("  dangling references: " + tmp.size());
-        if (tmp.isEmpty()) {
+        console.info.println(prefix + "references: " + references.size() + " (" + (System.currentTimeMillis() - started) + " ms)");
+        dangling = new HashSet<>();
+        for (String reference : references) {
+            if (!files.contains(reference)) {
+                dangling.add(reference);
+            }
+        }
+        console.error.println(prefix + "dangling references: " + dangling.size());
+        if (dangling.isEmpty()) {
             if (result.size() == 0) {
                 // there's no .all.idx
             } else {
-                if (allIdxBroken(connection, docrootObj, all)) {
+                if (allIdxBroken(prefix, connection, docrootObj, all)) {
                     problem = true;
                 }
             }
         } else {
             problem = true;
-            for (String path : tmp) {
+            for (String path : dangling) {
                 console.verbose.println("    " + path);
             }
-            removeReferences(connection, docrootObj, tmp);
-            console.verbose.println("skipping allIdx check because we have dangling references");
+            removeReferences(prefix, connection, docrootObj, dangling);
+            console.verbose.println(prefix + "skipping allIdx check because we have dangling references");
         }
         if (md5check) {
-            if (md5check(docroot, all)) {
+            if (md5check(prefix, docroot, all, state)) {
                 problem = true;
             }
+            if (state != null) {
+                state.save();
+            }
+        }
+        unreferenced = new ArrayList<>();
+        for (String file : files) {
+            if (!references.contains(file)) {
+                unreferenced.add(file);
+            }
         }
-        tmp = new ArrayList<>(files);
-        tmp.removeAll(references);
-        console.error.println("  unreferenced files: " + tmp.size());
-        if (!tmp.isEmpty()) {
+        console.error.println(prefix + "unreferenced files: " + unreferenced.size());
+        if (!unreferenced.isEmpty()) {
             if (gc) {
                 if (problem) {
                     throw new IOException("garbage collection not allowed - fix the above problems first");
                 }
-                gc(docroot, tmp);
+                gc(prefix, docroot, unreferenced);
             } else {
                 problem = true;
-                for (String path : tmp) {
+                for (String path : unreferenced) {
                     console.verbose.println("    " + path);
                 }
             }
@@ -178,30 +300,33 @@ public class Fsck extends Base {
         return problem ? null : result;
     }
 
-    private boolean allIdxBroken(Connection connection, Docroot docrootObj, Index all) throws IOException {
+    private boolean allIdxBroken(String prefix, Connection connection, Docroot docrootObj, Index all) throws IOException {
+        long started;
         Node allLoadedFile;
         Index allLoaded;
         Node repaired;
 
+        started = System.currentTimeMillis();
         allLoadedFile = docrootObj.index(connection, Index.ALL_IDX);
         allLoaded = Index.load(allLoadedFile);
+        console.info.println(prefix + "all-index check (" + (System.currentTimeMillis() - started) + " ms)");
         if (all.equals(allLoaded)) {
             return false;
         }
         if (repairAllIdx) {
-            console.info.println("all-index fixed");
+            console.info.println(prefix + "all-index fixed");
             all.save(allLoadedFile);
             return false;
         } else {
             repaired = repairedLocation(docrootObj.index(connection, Index.ALL_IDX));
             repaired.getParent().mkdirsOpt();
-            console.error.println("all-index is broken");
+            console.error.println(prefix + "all-index is broken");
             all.save(repaired);
             return true;
         }
     }
 
-    private void removeReferences(Connection connection, Docroot docrootObj, List<String> references) throws IOException {
+    private void removeReferences(String prefix, Connection connection, Docroot docrootObj, Set<String> references) throws IOException {
         Index orig;
         Index repaired;
         Node repairedFile;
@@ -216,7 +341,7 @@ public class Fsck extends Base {
             }
             if (orig.size() != repaired.size()) {
                 repairedFile = repairedLocation(file);
-                console.info.println("writing repaired index: " + repairedFile);
+                console.info.println(prefix + "writing repaired index: " + repairedFile);
                 repairedFile.getParent().mkdirsOpt();
                 repaired.save(repairedFile);
             }
@@ -228,96 +353,192 @@ public class Fsck extends Base {
         return file.getParent().getParent().getParent().join("repaired-indexes", file.getParent().getName(), file.getName());
     }
 
-    private boolean md5check(Node docroot, Index index) throws IOException {
+    private FsckState loadState(String prefix, Connection connection, Docroot docrootObj) throws IOException {
+        FileNode file;
+        FsckState result;
+
+        file = stateRoot.join(connection.getHost().getName(), docrootObj.getName() + ".state");
+        if (full) {
+            return new FsckState(file);
+        }
+        result = FsckState.loadOrCreate(file);
+        console.verbose.println(prefix + "state loaded from " + file);
+        return result;
+    }
+
+    /** Number of labels passed to a single md5 invocation. */
+    private static final int MD5_BATCH = 500;
+
+    /**
+     * Splits the index into md5Shards shards, each verified by its own remote process at a time. Output is compared line by
+     * line, so memory is bounded by the batch size, not by the docroot size.
+     */
+    private boolean md5check(String prefix, Node docroot, Index index, FsckState state) throws IOException {
+        long started;
+        boolean problem;
+        ExecutorService executor;
+        List<Future<Boolean>> futures;
+        AtomicInteger skipped;
+
+        skipped = new AtomicInteger();
+        started = System.currentTimeMillis();
+        problem = false;
+        executor = Executors.newFixedThreadPool(md5Shards);
+        try {
+            futures = new ArrayList<>();
+            for (int i = 0; i < md5Shards; i++) {
+                int shard = i;
+                futures.add(executor.submit(() -> md5shard(prefix, docroot, index, state, shard, skipped)));
+            }
+            for (Future<Boolean> future : futures) {
+                if (get(future)) {
+                    problem = true;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        console.info.println(prefix + "md5 check: " + (problem ? "failed" : "ok") + " (" + md5Shards + " shards, " + skipped.get() + " unchanged files skipped, "
+                + (System.currentTimeMillis() - started) + " ms)");
+        return problem;
+    }
+
+    /** @return true if a problem was detected */
+    private boolean md5shard(String prefix, Node docroot, Index index, FsckState state, int shard, AtomicInteger skipped) throws IOException {
+        Md5Batch batch;
         boolean problem;
-        List<String> paths;
-        List<String> expecteds;
+        int i;
 
         problem = false;
-        console.info.print("  md5 check: ");
-        paths = new ArrayList<>();
-        expecteds = new ArrayList<>();
+        batch = new Md5Batch(prefix, state);
+        i = 0;
         for (Label label : index) {
-            paths.add(label.getOriginalPath());
-            expecteds.add(Hex.encodeString(label.md5()));
-            if (paths.size() > 500) {
-                if (md5check(docroot, paths, expecteds)) {
+            if (i++ % md5Shards != shard) {
+                continue;
+            }
+            if (state != null && state.isVerified(label.getOriginalPath())) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            batch.add(label);
+            if (batch.size() == MD5_BATCH) {
+                if (batch.run(docroot)) {
                     problem = true;
                 }
-                paths.clear();
-                expecteds.clear();
             }
         }
-        if (paths.size() > 0) {
-            if (md5check(docroot, paths, expecteds)) {
+        if (batch.size() > 0) {
+            if (batch.run(docroot)) {
                 problem = true;
             }
         }
-        console.info.println(problem ? "failed" : "ok");
         return problem;
     }
 
-    private static final Separator SEPARATOR = Separator.RAW_LINE;
+    /** Paths and expected md5 sums for a single md5 invocation; receives the output lines as a consumer. */
+    private class Md5Batch implements Consumer<String> {
+        private final String prefix;
+        /** null if not incremental */
+        private final FsckState state;
+        private final List<String> paths;
+        private final List<String> expecteds;
+        private int next;
+        private boolean problem;
+
+        Md5Batch(String prefix, FsckState state) {
+            this.prefix = prefix;
+            this.state = state;
+            this.paths = new ArrayList<>(MD5_BATCH);
+            this.expecteds = new ArrayList<>(MD5_BATCH);
+        }
 
-    private boolean md5check(Node docroot, List<String> paths, List<String> expecteds) throws IOException {
-        String md5all;
-        List<String> computeds;
-        boolean problem;
-        int i;
-        String expected;
+        public void add(Label label) {
+            paths.add(label.getOriginalPath());
+            expecteds.add(Hex.encodeString(label.md5()));
+        }
 
-        problem = false;
-        md5all = exec(docroot, Strings.append(mac ? new String[] { "md5", "-q" } : new String[] { "md5sum" }, Strings.toArray(paths)));
-        computeds = SEPARATOR.split(md5all);
-        if (expecteds.size() != computeds.size()) {
-            throw new IllegalStateException(expecteds + " vs " + computeds);
+        public int size() {
+            return paths.size();
         }
-        i = 0;
-        for (String computed : computeds) {
-            computed = computed.trim();
-            if (!mac) {
-                // because md5sum prints the checksum followed by the path
-                computed = computed.substring(0, computed.indexOf(' '));
+
+        /** runs and clears this batch; @return true if a problem was detected */
+        public boolean run(Node docroot) throws IOException {
+            boolean result;
+
+            next = 0;
+            problem = false;
+            exec(docroot, new LineOutputStream(this), Strings.append(mac ? new String[] { "md5", "-q" } : new String[] { "md5sum" }, Strings.toArray(paths)));
+            if (next != expecteds.size()) {
+                throw new IllegalStateException(prefix + "expected " + expecteds.size() + " md5 sums, got " + next);
+            }
+            result = problem;
+            paths.clear();
+            expecteds.clear();
+            return result;
+        }
+
+        @Override
+        public void accept(String line) {
+            String computed;
+            String expected;
+
+            if (next >= expecteds.size()) {
+                throw new IllegalStateException(prefix + "unexpected md5 output: " + line);
             }
-            expected = expecteds.get(i);
+            // md5sum prints the checksum followed by the path
+            computed = mac ? line : line.substring(0, line.indexOf(' '));
+            expected = expecteds.get(next);
             if (!expected.equals(computed)) {
-                console.error.println(paths.get(i)+ ": md5 broken: expected " + expected + ", got " + computed);
+                console.error.println(prefix + paths.get(next) + ": md5 broken: expected " + expected + ", got " + computed);
                 problem = true;
+                if (state != null) {
+                    state.broken(paths.get(next));
+                }
+            } else if (state != null) {
+                state.verified(paths.get(next), System.currentTimeMillis());
             }
-            i++;
+            next++;
         }
-        return problem;
     }
 
     public static List<String> find(Node base, String... args) throws IOException {
-        String str;
         List<String> lst;
 
-        str = exec(base, Strings.append(new String[] { "find", "." }, args));
         lst = new ArrayList<>();
-        for (String path : OS.CURRENT.lineSeparator.split(str)) {
-            if (path.startsWith("./")) {
-                path = path.substring(2);
-            }
-            path = path.trim();
+        find(base, lst::add, args);
+        return lst;
+    }
+
+    /** Passes found paths to dest as find prints them, without buffering the complete output. */
+    public static void find(Node base, Consumer<String> dest, String... args) throws IOException {
+        exec(base, new LineOutputStream(line -> {
+            String path;
+
+            path = line.startsWith("./") ? line.substring(2).trim() : line;
             if (!path.isEmpty()) {
-                lst.add(path);
+                dest.accept(path);
             }
-        }
-        return lst;
+        }), Strings.append(new String[] { "find", "." }, args));
     }
 
-    private static String exec(Node dir, String... cmd) throws IOException {
-        if (dir instanceof SshNode) {
-            try {
-                return ((SshNode) dir).getRoot().exec(Strings.append(new String[] { "cd", "/" + dir.getPath(), "&&" }, escape(cmd)));
-            } catch (JSchException e) {
-                throw new IOException();
+    /** Streams command output into dest and closes it. */
+    private static void exec(Node dir, OutputStream dest, String... cmd) throws IOException {
+        Writer writer;
+
+        try (OutputStream out = dest) {
+            if (dir instanceof SshNode) {
+                try {
+                    ((SshNode) dir).getRoot().exec(true, out, Strings.append(new String[] { "cd", "/" + dir.getPath(), "&&" }, escape(cmd)));
+                } catch (JSchException e) {
+                    throw new IOException(e);
+                }
+            } else if (dir instanceof FileNode) {
+                writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                new Launcher((FileNode) dir, cmd).exec(writer);
+                writer.flush();
+            } else {
+                throw new UnsupportedOperationException("exec on " + dir.getClass());
             }
-        } else if (dir instanceof FileNode) {
-            return ((FileNode) dir).exec(cmd);
-        } else {
-            throw new UnsupportedOperationException("exec on " + dir.getClass());
         }
     }
 
@@ -352,6 +573,7 @@ public class Fsck extends Base {
                 case '(':
                 case ')':
                 case '\n':
+                case '\\':
                     result.append('\\');
                     result.append(c);
                     break;
@@ -365,31 +587,28 @@ public class Fsck extends Base {
 
     //--
 
-    private void gc(Node base, List<String> files) throws IOException {
-        gcFiles(base, files);
-        gcDirectories(base);
+    private void gc(String prefix, Node base, List<String> files) throws IOException {
+        gcFiles(prefix, base, files);
+        gcDirectories(prefix, base);
     }
 
-    private void gcFiles(Node base, List<String> files) throws IOException {
-        console.info.print("scanning files ...");
-        console.info.println(" done: " + files.size());
+    private void gcFiles(String prefix, Node base, List<String> files) throws IOException {
         for (String file : files) {
             console.verbose.println("rm " + file);
             base.join(file).deleteFile();
         }
-        console.info.println(files.size() + " unreferenced files deleted.");
+        console.info.println(prefix + files.size() + " unreferenced files deleted.");
     }
 
-    private void gcDirectories(Node base) throws IOException {
+    private void gcDirectories(String prefix, Node base) throws IOException {
         List<String> paths;
 
-        console.info.print("scanning empty directories ...");
         paths = Fsck.find(base, "-type", "d", "-empty");
-        console.info.println(" done: " + paths.size());
+        console.info.println(prefix + "empty directories: " + paths.size());
         for (String path : paths) {
             rmdir(base, base.join(path));
         }
-        console.info.println(paths.size() + " empty directories deleted.");
+        console.info.println(prefix + paths.size() + " empty directories deleted.");
     }
 
     private void rmdir(Node base, Node dir) throws IOException {
@@ -0,0 +1,213 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.cli;
+
+import net.oneandone.lavender.index.Util;
+import net.oneandone.sushi.fs.file.FileNode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verification snapshot of one docroot on one host: files with size and modification time when their md5 sum was verified.
+ * Files are content-addressed, so a file with unchanged size and mtime doesn't have to be hashed again.
+ */
+public class FsckState {
+    private static final char SEP = ' ';
+    private static final char ESCAPE = '%';
+    private static final char LF = '\n';
+
+    public static FsckState loadOrCreate(FileNode file) throws IOException {
+        FsckState result;
+
+        result = new FsckState(file);
+        if (file.exists()) {
+            for (String line : file.readLines()) {
+                result.add(Entry.parse(line));
+            }
+        }
+        return result;
+    }
+
+    private static class Entry {
+        // path SEP size SEP mtime SEP verifiedAt
+        public static Entry parse(String str) {
+            int idx;
+            int prev;
+            String path;
+            String stat;
+
+            idx = str.indexOf(SEP);
+            path = decode(str.substring(0, idx));
+            prev = idx + 1;
+            idx = str.indexOf(SEP, prev);
+            idx = str.indexOf(SEP, idx + 1);
+            stat = str.substring(prev, idx);
+            prev = idx + 1;
+            return new Entry(path, stat, Long.parseLong(str.substring(prev)));
+        }
+
+        public final String path;
+        /** size SEP mtime, as printed by find */
+        public final String stat;
+        public final long verifiedAt;
+
+        private Entry(String path, String stat, long verifiedAt) {
+            this.path = path;
+            this.stat = stat;
+            this.verifiedAt = verifiedAt;
+        }
+
+        public String toString() {
+            return encode(path) + SEP + stat + SEP + verifiedAt;
+        }
+    }
+
+    private final FileNode file;
+    private final Map<String, Entry> verified;
+    /** stats of the current run; path mapped to size SEP mtime */
+    private final Map<String, String> current;
+
+    public FsckState(FileNode file) {
+        this.file = file;
+        this.verified = new ConcurrentHashMap<>();
+        this.current = new HashMap<>();
+    }
+
+    private void add(Entry entry) {
+        verified.put(entry.path, entry);
+    }
+
+    /**
+     * Records a line of find -printf '%s %T@ %P\n'.
+     * @return the path
+     */
+    public String stat(String line) {
+        int idx;
+        String path;
+
+        idx = line.indexOf(SEP);
+        idx = line.indexOf(SEP, idx + 1);
+        if (idx == -1) {
+            throw new IllegalArgumentException("invalid stat line: " + line);
+        }
+        path = line.substring(idx + 1);
+        current.put(path, line.substring(0, idx));
+        return path;
+    }
+
+    /** @return true if the file was verified before and is unchanged since */
+    public boolean isVerified(String path) {
+        Entry entry;
+
+        entry = verified.get(path);
+        return entry != null && entry.stat.equals(current.get(path));
+    }
+
+    public void verified(String path, long at) {
+        String stat;
+
+        stat = current.get(path);
+        if (stat != null) {
+            add(new Entry(path, stat, at));
+        }
+    }
+
+    public void broken(String path) {
+        verified.remove(path);
+    }
+
+    /** @return number of files verified and unchanged */
+    public int size() {
+        int result;
+
+        result = 0;
+        for (String path : verified.keySet()) {
+            if (isVerified(path)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /** saves unchanged files only; removed or modified files are dropped */
+    public void save() throws IOException {
+        FileNode parent;
+        FileNode tmp;
+
+        file.getParent().mkdirsOpt();
+        // first write to a temp file, then move it (which is atomic); same as Md5Cache
+        parent = file.getParent();
+        tmp = Util.newTmpFile(parent);
+        try (Writer writer = tmp.newWriter()) {
+            for (Entry entry : verified.values()) {
+                if (isVerified(entry.path)) {
+                    writer.write(entry.toString());
+                    writer.write(LF);
+                }
+            }
+        }
+        tmp.move(file, true);
+    }
+
+    //--
+
+    /** escapes separators in paths as %XX */
+    static String encode(String str) {
+        StringBuilder result;
+        char c;
+
+        if (str.indexOf(SEP) == -1 && str.indexOf(ESCAPE) == -1 && str.indexOf(LF) == -1) {
+            return str;
+        }
+        result = new StringBuilder(str.length() + 4);
+        for (int i = 0; i < str.length(); i++) {
+            c = str.charAt(i);
+            if (c == SEP || c == ESCAPE || c == LF) {
+                result.append(ESCAPE);
+                result.append(Character.forDigit(c >>> 4, 16));
+                result.append(Character.forDigit(c & 0x0F, 16));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    static String decode(String str) {
+        StringBuilder result;
+        int prev;
+        int idx;
+
+        idx = str.indexOf(ESCAPE);
+        if (idx == -1) {
+            return str;
+        }
+        result = new StringBuilder(str.length());
+        prev = 0;
+        do {
+            result.append(str, prev, idx);
+            result.append((char) Integer.parseInt(str.substring(idx + 1, idx + 3), 16));
+            prev = idx + 3;
+            idx = str.indexOf(ESCAPE, prev);
+        } while (idx != -1);
+        result.append(str.substring(prev));
+        return result.toString();
+    }
+}
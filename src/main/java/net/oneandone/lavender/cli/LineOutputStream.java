@@ -0,0 +1,72 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.cli;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits command output into lines and passes them to a consumer as they arrive, so the output is never buffered as a whole.
+ * Lines are trimmed, empty lines are skipped. CAUTION: the consumer is invoked by the thread writing into this stream.
+ */
+public class LineOutputStream extends OutputStream {
+    private final Consumer<String> consumer;
+    private byte[] buffer;
+    private int count;
+
+    public LineOutputStream(Consumer<String> consumer) {
+        this.consumer = consumer;
+        this.buffer = new byte[256];
+        this.count = 0;
+    }
+
+    @Override
+    public void write(int b) {
+        if (b == '\n') {
+            line();
+        } else {
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[count++] = (byte) b;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        for (int i = off, max = off + len; i < max; i++) {
+            write(b[i]);
+        }
+    }
+
+    /** passes a pending last line without line separator */
+    @Override
+    public void close() {
+        line();
+    }
+
+    private void line() {
+        String str;
+
+        str = new String(buffer, 0, count, StandardCharsets.UTF_8).trim();
+        count = 0;
+        if (!str.isEmpty()) {
+            consumer.accept(str);
+        }
+    }
+}
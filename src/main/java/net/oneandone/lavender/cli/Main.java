@@ -56,12 +56,12 @@ public class Main {
                 cli.begin(globals);
             }
 
-            cli.add(War.class, "war war cluster docroot index");
+            cli.add(War.class, "war -prerender=null war cluster docroot index");
             cli.add(ScanLegacy.class, "scan-legacy war");
             cli.add(Scm.class, "scm -prefix=null scm cluster docroot index?");
             cli.add(File.class, "file -prefix archive cluster docroot index");
             cli.add(Direct.class, "direct cluster arg+");
-            cli.add(Fsck.class, "fsck -md5 -gc -mac -repair-all-idx cluster");
+            cli.add(Fsck.class, "fsck -md5 -md5-shards=4 -full -gc -mac -repair-all-idx cluster");
             cli.add(RemoveEntry.class, "remove-entry cluster originalPath+");
 
             return cli.run(args);
@@ -76,9 +76,11 @@ public class Main {
         help.append("usage: 'lavender' global-options command\n");
         help.append("\n");
         help.append("publishing commands\n");
-        help.append("  'war' war cluster docroot index\n");
+        help.append("  'war' ['-prerender' contextPath] war cluster docroot index\n");
         help.append("                            publish resources from the specified war, adds nodes- and index file to the war\n");
-        help.append("                            index is a file name with suffix\n");
+        help.append("                            index is a file name with suffix;\n");
+        help.append("                            -prerender adds rewritten copies of static html and css files for the specified\n");
+        help.append("                            context path, the production filter delivers them without runtime processing\n");
         help.append("  'scan-legacy' war         list all legacy modules in the specified war;\n");
         help.append("                            legacy is a pustefix module with embedded resources but not lavender.properties file\n");
         help.append("  'scm' ['-prefix' prefix] scm cluster docroot index?\n");
@@ -93,9 +95,12 @@ public class Main {
         help.append("  'help'                    print this message\n");
         help.append("  'version'                 print version information\n");
         help.append("  'direct' cluster arg+     executes the specified command on all machines of the cluster\n");
-        help.append("  'fsck' ['-md5'] ['-gc'] ['-repair-all-idx'] cluster\n");
+        help.append("  'fsck' ['-md5'] ['-md5-shards' n] ['-full'] ['-gc'] ['-repair-all-idx'] cluster\n");
         help.append("                            checks if all files are indexed and referenced and the same on all machines\n");
         help.append("                            -md5 also checks md5 sums of every file;\n");
+        help.append("                            -md5-shards number of concurrent md5 processes per host; default is 4\n");
+        help.append("                            -full checks md5 sums of all files; default is to skip files verified\n");
+        help.append("                            by a previous run with unchanged size and modification time\n");
         help.append("                            -gc removes unreferenced files\n");
         help.append("                            -repair-all-idx automatically fixes the all index if it is broken\n");
         help.append("  'remove-entry' cluster originalPath+\n");
@@ -31,10 +31,14 @@ public class War extends Base {
     private final Cluster cluster;
     private final Docroot docroot;
     private String nodes;
+    /** null to disable prerendering */
+    private final String prerender;
 
-    public War(Globals globals, FileNode war, String clusterName, String docrootName, String indexName) throws IOException, URISyntaxException {
+    public War(Globals globals, String prerender, FileNode war, String clusterName, String docrootName, String indexName)
+            throws IOException, URISyntaxException {
         super(globals);
 
+        this.prerender = prerender;
         this.war = war.checkFile();
         this.indexName = indexName;
         this.cluster = globals.network().get(clusterName);
@@ -55,7 +59,7 @@ public class War extends Base {
         try (Pool pool = globals.pool()) {
             cacheroot = globals.cacheroot();
             engine = new WarEngine(cacheroot, Distributor.open(cacheroot, cluster.connect(pool), docroot, indexName), properties.secrets,
-                    war, outputNodesFile, nodes);
+                    war, outputNodesFile, nodes, prerender);
             engine.run();
         }
         outputNodesFile.deleteFile();
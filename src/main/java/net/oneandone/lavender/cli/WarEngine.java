@@ -17,6 +17,10 @@ package net.oneandone.lavender.cli;
 
 import net.oneandone.lavender.config.Secrets;
 import net.oneandone.lavender.filter.Lavender;
+import net.oneandone.lavender.filter.Prerendered;
+import net.oneandone.lavender.filter.processor.LavenderProcessorFactory;
+import net.oneandone.lavender.filter.processor.LavenderRewriteEngine;
+import net.oneandone.lavender.filter.processor.RewriteEngine;
 import net.oneandone.lavender.index.Index;
 import net.oneandone.lavender.modules.Distributor;
 import net.oneandone.lavender.modules.Module;
@@ -30,18 +34,25 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Drives the war publishing process: Extracts resources from a war files to distributors and creates a new war file with an index and a
- * nodes files.
+ * nodes files. Optionally, static html and css files of the war are prerendered, see {@link Prerendered}.
  */
 public class WarEngine {
     private static final Logger LOG = LoggerFactory.getLogger(WarEngine.class);
@@ -52,14 +63,23 @@ public class WarEngine {
     private final FileNode war;
     private final FileNode outputNodesFile;
     private final String nodes;
+    /** null to disable prerendering */
+    private final String prerenderContextPath;
 
     public WarEngine(FileNode cache, Distributor distributor, Secrets secrets, FileNode war, FileNode outputNodesFile, String nodes) {
+        this(cache, distributor, secrets, war, outputNodesFile, nodes, null);
+    }
+
+    /** @param prerenderContextPath context path the war is deployed with, null to disable prerendering */
+    public WarEngine(FileNode cache, Distributor distributor, Secrets secrets, FileNode war, FileNode outputNodesFile, String nodes,
+                     String prerenderContextPath) {
         this.cache = cache;
         this.distributor = distributor;
         this.secrets = secrets;
         this.war = war;
         this.outputNodesFile = outputNodesFile;
         this.nodes = nodes;
+        this.prerenderContextPath = prerenderContextPath == null ? null : Prerendered.normalizeContextPath(prerenderContextPath);
     }
 
     /**
@@ -127,7 +147,60 @@ public class WarEngine {
 
             entry = fs.getPath(Lavender.LAVENDER_NODES);
             Files.copy(nodesFile.newInputStream(), entry, StandardCopyOption.REPLACE_EXISTING);
+
+            if (prerenderContextPath != null) {
+                prerender(fs, LavenderRewriteEngine.load(webIndex, nodesFile));
+            }
+        }
+    }
+
+    /** Rewrites static html and css files with the new index and nodes and adds them to the war, together with a manifest */
+    private void prerender(FileSystem fs, RewriteEngine engine) throws IOException {
+        long started;
+        LavenderProcessorFactory factory;
+        List<String> paths;
+        CharsetDecoder decoder;
+        String content;
+        Path dest;
+
+        started = System.currentTimeMillis();
+        factory = new LavenderProcessorFactory(engine, 0);
+        decoder = StandardCharsets.UTF_8.newDecoder();
+        paths = new ArrayList<>();
+        for (String path : staticFiles(fs)) {
+            try {
+                content = decoder.decode(ByteBuffer.wrap(Files.readAllBytes(fs.getPath(path)))).toString();
+            } catch (CharacterCodingException e) {
+                LOG.info("not prerendered, no utf-8: " + path);
+                continue;
+            }
+            for (String scheme : Prerendered.SCHEMES) {
+                dest = fs.getPath(Prerendered.DIR + scheme + "/" + path);
+                Files.createDirectories(dest.getParent());
+                Files.write(dest, Prerendered.render(factory, scheme, prerenderContextPath, path, content).getBytes(StandardCharsets.UTF_8));
+            }
+            paths.add(path);
+        }
+        Files.write(fs.getPath(Prerendered.MANIFEST), Prerendered.manifest(prerenderContextPath, paths).getBytes(StandardCharsets.UTF_8));
+        LOG.info("prerendered " + paths.size() + " files for context path " + prerenderContextPath + ", "
+                + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    private static List<String> staticFiles(FileSystem fs) throws IOException {
+        List<String> result;
+        String path;
+
+        result = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(fs.getPath("/"))) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                path = file.toString().substring(1);
+                if (Files.isRegularFile(file) && Prerendered.contentType(path) != null) {
+                    result.add(path);
+                }
+            }
         }
+        Collections.sort(result);
+        return result;
     }
 
 }
@@ -17,8 +17,10 @@ package net.oneandone.lavender.filter;
 
 import net.oneandone.lavender.config.HostProperties;
 import net.oneandone.lavender.modules.Module;
+import net.oneandone.lavender.modules.ModuleIndex;
 import net.oneandone.lavender.modules.NodeModule;
 import net.oneandone.lavender.modules.Resource;
+import net.oneandone.lavender.modules.SvnModule;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
 import net.oneandone.sushi.fs.file.FileNode;
@@ -46,7 +48,8 @@ public class DevelopmentFilter implements Filter {
     private static final Logger LOG = LoggerFactory.getLogger(ProductionFilter.class);
 
     private FilterConfig filterConfig;
-    private List<Module> modules;
+    private ModuleIndex modules;
+    private ModuleRefresher refresher;
 
     @Override
     public void init(FilterConfig init) throws ServletException {
@@ -62,7 +65,8 @@ public class DevelopmentFilter implements Filter {
             webapp = world.file(init.getServletContext().getRealPath(""));
             properties = HostProperties.load(HostProperties.file(world), false);
             FileNode cache = properties.cacheroot();
-            modules = loadModulesFromWebapp(webapp, properties, cache);
+            modules = new ModuleIndex(loadModulesFromWebapp(webapp, properties, cache));
+            refresher = ModuleRefresher.create(modules.getModules());
         } catch (IOException | URISyntaxException e) {
             e.printStackTrace();
             throw new ServletException("Could not initialize Lavender development filter", e);
@@ -86,13 +90,27 @@ public class DevelopmentFilter implements Filter {
 
     @Override
     public void destroy() {
-        // nothing to do
+        if (refresher != null) {
+            refresher.close();
+        }
+        if (modules != null) {
+            // pollers are shared with a filter that replaces this one
+            for (Module module : modules.getModules()) {
+                if (module instanceof SvnModule) {
+                    ((SvnModule) module).close();
+                }
+            }
+        }
     }
 
     public int getModulesCount() {
         return modules.size();
     }
 
+    public String[] getModuleScans() {
+        return refresher.getScans();
+    }
+
     List<Module> loadModulesFromWebapp(Node webapp, HostProperties properties, FileNode cache) throws IOException {
         return NodeModule.fromWebapp(cache, false, webapp, properties.secrets);
     }
@@ -130,10 +148,12 @@ public class DevelopmentFilter implements Filter {
     }
 
     private synchronized Resource lookup(String resourcePath) throws IOException {
+        List<Module> candidates;
         Resource resource;
 
+        candidates = modules.lookup(resourcePath);
         // lookup cached stuff first
-        for (Module module : modules) {
+        for (Module module : candidates) {
             if (module.loadedEntries() != null) {
                 resource = module.probe(resourcePath);
                 if (resource != null) {
@@ -145,9 +165,14 @@ public class DevelopmentFilter implements Filter {
                 }
             }
         }
-        for (Module module : modules) {
+        for (Module module : candidates) {
             if (module.matches(resourcePath) != null) {
-                module.softInvalidateEntries();
+                if (refresher.isRefreshed(module) && module.loadedEntries() != null) {
+                    // serve the current entries, changes are picked up in the background
+                    refresher.requestRefresh(module);
+                } else {
+                    module.softInvalidateEntries();
+                }
                 resource = module.probe(resourcePath);
                 if (resource != null) {
                     return resource;
@@ -0,0 +1,116 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches files in a directory and invokes an action in a background thread when they're created or modified. The action runs
+ * after the files have been quiet for a moment, so a deployment that writes several files (or writes a file in several steps)
+ * triggers a single action. Disable with system property "lavender.watch=false".
+ */
+public class IndexWatcher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexWatcher.class);
+
+    public static final String WATCH_PROPERTY = "lavender.watch";
+
+    /** milliseconds without events before the action runs */
+    public static final long QUIET = 1000;
+
+    /** @return null if disabled */
+    public static IndexWatcher createOpt(Path directory, Collection<String> names, Runnable action) throws IOException {
+        if (!Boolean.parseBoolean(System.getProperty(WATCH_PROPERTY, "true"))) {
+            return null;
+        }
+        return new IndexWatcher(directory, names, action);
+    }
+
+    //--
+
+    private final Path directory;
+    private final Collection<String> names;
+    private final Runnable action;
+    private final WatchService service;
+    private final Thread thread;
+
+    public IndexWatcher(Path directory, Collection<String> names, Runnable action) throws IOException {
+        this.directory = directory;
+        this.names = names;
+        this.action = action;
+        this.service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "lavender-index-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        WatchKey key;
+
+        try {
+            while (true) {
+                key = service.take();
+                if (relevant(key)) {
+                    while (true) {
+                        key = service.poll(QUIET, TimeUnit.MILLISECONDS);
+                        if (key == null) {
+                            break;
+                        }
+                        relevant(key);
+                    }
+                    LOG.info(directory + ": " + names + " changed");
+                    try {
+                        action.run();
+                    } catch (RuntimeException e) {
+                        LOG.error(directory + ": action failed: " + e.getMessage(), e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /** consumes the events of the key */
+    private boolean relevant(WatchKey key) {
+        boolean result;
+
+        result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || names.contains(event.context().toString())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
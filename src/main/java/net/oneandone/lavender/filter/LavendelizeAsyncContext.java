@@ -0,0 +1,186 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps the AsyncContext of an asynchronous request to flush and close the lavendelized response before the container
+ * completes the request: when the application calls complete, or after a timeout or an error. After a dispatch, the
+ * dispatched filter pass continues with the same lavendelized response and completes it. For contexts started without
+ * arguments, getRequest and getResponse return the lavendelized request and response, so output written through the
+ * context is lavendelized.
+ */
+public class LavendelizeAsyncContext implements AsyncContext {
+    private static final Logger LOG = LoggerFactory.getLogger(LavendelizeAsyncContext.class);
+
+    /** What the filter would do after the filter chain returns for synchronous requests. */
+    public interface Completion {
+        void complete() throws IOException;
+    }
+
+    /** Runs a completion only once. */
+    public static class Once implements Completion {
+        private final Completion completion;
+        private final AtomicBoolean done;
+
+        public Once(Completion completion) {
+            this.completion = completion;
+            this.done = new AtomicBoolean(false);
+        }
+
+        @Override
+        public void complete() throws IOException {
+            if (done.compareAndSet(false, true)) {
+                completion.complete();
+            }
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+    }
+
+    //--
+
+    private final AsyncContext delegate;
+    private final Once completion;
+    /** null if the context was started with explicit request and response */
+    private final ServletRequest request;
+    private final ServletResponse response;
+
+    public LavendelizeAsyncContext(AsyncContext delegate, Once completion, ServletRequest request, ServletResponse response) {
+        this.delegate = delegate;
+        this.completion = completion;
+        this.request = request;
+        this.response = response;
+        delegate.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                if (!completion.isDone()) {
+                    // output still buffered in processors cannot be sent anymore
+                    LOG.warn("async request completed without lavender - is the filter mapped for async dispatches?");
+                    finish();
+                }
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                finish();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                finish();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // the new context is wrapped by LavendelizeHttpServletRequest
+            }
+        });
+    }
+
+    /** Logs errors, because the container does not report them */
+    private void finish() {
+        try {
+            completion.complete();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error completing async request", e);
+        }
+    }
+
+    public AsyncContext getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void complete() {
+        finish();
+        delegate.complete();
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return request != null ? request : delegate.getRequest();
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return response != null ? response : delegate.getResponse();
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return delegate.hasOriginalRequestAndResponse();
+    }
+
+    @Override
+    public void dispatch() {
+        delegate.dispatch();
+    }
+
+    @Override
+    public void dispatch(String path) {
+        delegate.dispatch(path);
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        delegate.dispatch(context, path);
+    }
+
+    @Override
+    public void start(Runnable run) {
+        delegate.start(run);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+        delegate.addListener(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+        delegate.addListener(listener, request, response);
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+        return delegate.createListener(clazz);
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        delegate.setTimeout(timeout);
+    }
+
+    @Override
+    public long getTimeout() {
+        return delegate.getTimeout();
+    }
+}
@@ -15,6 +15,9 @@
  */
 package net.oneandone.lavender.filter;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import java.util.ArrayList;
@@ -25,15 +28,57 @@ import java.util.List;
 /**
  * An implementation of {@link HttpServletRequest} that removes the "Accept-Encoding" header from the request.
  * This is necessary to avoid gzipped output (e.g. by Jasmin), which had to be unzipped by Lavender.
+ * For asynchronous requests, it hands out an AsyncContext that completes the lavendelized response.
  */
 public class LavendelizeHttpServletRequest extends HttpServletRequestWrapper {
 
     private static final String ACCEPT_ENCODING = "Accept-Encoding";
 
+    /** null if asynchronous requests are not completed by Lavender */
+    private LavendelizeAsyncContext.Once completion;
+    /** lavendelized response handed out by contexts started without arguments */
+    private ServletResponse response;
+
+    private LavendelizeAsyncContext asyncContext;
+
     public LavendelizeHttpServletRequest(HttpServletRequest request) {
         super(request);
     }
 
+    /** @param completion shared by all filter passes of the request */
+    public void setAsyncCompletion(LavendelizeAsyncContext.Once completion, ServletResponse response) {
+        this.completion = completion;
+        this.response = response;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        // the container only knows the unwrapped request and response
+        return wrap(super.startAsync(), true);
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        return wrap(super.startAsync(servletRequest, servletResponse), false);
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        return wrap(super.getAsyncContext(), true);
+    }
+
+    private AsyncContext wrap(AsyncContext context, boolean original) {
+        if (completion == null || context == null) {
+            return context;
+        }
+        if (asyncContext == null || asyncContext.getDelegate() != context) {
+            asyncContext = original
+                    ? new LavendelizeAsyncContext(context, completion, this, response)
+                    : new LavendelizeAsyncContext(context, completion, null, null);
+        }
+        return asyncContext;
+    }
+
     @Override
     public String getHeader(String name) {
         if (ACCEPT_ENCODING.equalsIgnoreCase(name)) {
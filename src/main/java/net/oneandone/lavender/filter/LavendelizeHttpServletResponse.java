@@ -15,8 +15,10 @@
  */
 package net.oneandone.lavender.filter;
 
+import net.oneandone.lavender.filter.processor.HtmlProcessor;
 import net.oneandone.lavender.filter.processor.Processor;
 import net.oneandone.lavender.filter.processor.ProcessorFactory;
+import net.oneandone.lavender.filter.processor.RewriteMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +27,7 @@ import javax.activation.MimeTypeParseException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -32,9 +35,12 @@ import java.io.PrintWriter;
 import java.io.Writer;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -80,6 +86,21 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
      */
     private boolean gzip;
 
+    /** Link header values to send with html responses */
+    private List<String> preloadLinks = Collections.emptyList();
+
+    /** Null if head assets are not recorded */
+    private BiConsumer<String, String> headListener;
+
+    /** Null if not recorded */
+    private RewriteMetrics metrics;
+
+    /** Null until initialize has been called with a content type */
+    private String baseType;
+
+    /** true for HTTP/2 and later clients */
+    private boolean multiplexed;
+
     public LavendelizeHttpServletResponse(HttpServletResponse response, ProcessorFactory processorFactory,
             URI requestURI, String userAgent, String contextPath, boolean clientCanGzip) {
         super(response);
@@ -96,6 +117,26 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
         this.processing = null;
         this.contentLength = null;
         this.gzip = clientCanGzip;
+        this.multiplexed = false;
+    }
+
+    /**
+     * Link headers for html responses and where to report head assets of this response; see PreloadHints.
+     * Has to be called before the content is written.
+     */
+    public void setPreload(List<String> links, BiConsumer<String, String> listener) {
+        this.preloadLinks = links;
+        this.headListener = listener;
+    }
+
+    /** For HTTP/2 and later clients; has to be called before the content is written. */
+    public void setMultiplexed(boolean multiplexed) {
+        this.multiplexed = multiplexed;
+    }
+
+    /** Where to count gzipped bytes; has to be called before the content is written. */
+    public void setMetrics(RewriteMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
@@ -136,8 +177,7 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
                         if (LOG.isDebugEnabled()) {
                             LOG.debug("getWriter() -> gzipped original outputStream");
                         }
-                        target = new OutputStreamWriter(new GZIPOutputStream(LavendelizeHttpServletResponse.super.getOutputStream()),
-                                encoding);
+                        target = new OutputStreamWriter(gzipOutputStream(), encoding);
                     } else {
                         target = LavendelizeHttpServletResponse.super.getWriter();
                     }
@@ -178,13 +218,13 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
 
                     processor = initialize();
                     if (processor == null) {
-                        tmp = LavendelizeHttpServletResponse.super.getOutputStream();
                         if (gzip) {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("getOutputStream() -> original outputStream");
                             }
-                            tmp = new GZIPOutputStream(tmp);
+                            tmp = gzipOutputStream();
                         } else {
+                            tmp = LavendelizeHttpServletResponse.super.getOutputStream();
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("getOutputStream() -> gzipped original outputStream");
                             }
@@ -197,8 +237,7 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("getOutputStream() -> lavendelized gzipped original outputStream");
                             }
-                            processor.setWriter(new OutputStreamWriter(
-                                    new GZIPOutputStream(LavendelizeHttpServletResponse.super.getOutputStream()), encoding));
+                            processor.setWriter(new OutputStreamWriter(gzipOutputStream(), encoding));
                         } else {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("getOutputStream() -> lavendelized original writer");
@@ -217,6 +256,16 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
         return outputStream;
     }
 
+    private OutputStream gzipOutputStream() throws IOException {
+        OutputStream dest;
+
+        dest = super.getOutputStream();
+        if (metrics != null && baseType != null) {
+            dest = new CountingOutputStream(dest, metrics.get(baseType).gzipBytes);
+        }
+        return new GZIPOutputStream(dest);
+    }
+
     /**
      *  Explicitly set a proper character encoding - otherwise, we'd get one implicitly defined by getWriter()
      * (if system property "org.apache.catalina.STRICT_SERVLET_COMPLIANCE" if set to "true").
@@ -273,9 +322,17 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
             processor = null;
             gzip = false;
         } else {
-            String baseType = mimeType.getBaseType();
-            baseType = baseType.toLowerCase();
-            processor = processorFactory.createProcessor(baseType,  getBaseURI(), getContextPath());
+            baseType = mimeType.getBaseType().toLowerCase();
+            processor = multiplexed ? processorFactory.createProcessor(baseType, getBaseURI(), getContextPath(), true)
+                    : processorFactory.createProcessor(baseType, getBaseURI(), getContextPath());
+            if (processor instanceof HtmlProcessor) {
+                for (String link : preloadLinks) {
+                    addHeader("Link", link);
+                }
+                if (headListener != null) {
+                    ((HtmlProcessor) processor).setHeadListener(headListener);
+                }
+            }
             if (gzip) {
                 gzip = GZIP_ENABLED.contains(baseType);
             }
@@ -381,4 +438,26 @@ public class LavendelizeHttpServletResponse extends HttpServletResponseWrapper {
 
     private static final String[] BOTS = { "Googlebot", "YandexBot", "Slurp", "bingbot", "Baiduspider", "msnbot", "ia_archiver",
             "MJ12bot", "Vagabondo", "UnisterBot" };
+
+    /** Counts bytes written to the underlying stream. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder count;
+
+        CountingOutputStream(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.add(len);
+        }
+    }
 }
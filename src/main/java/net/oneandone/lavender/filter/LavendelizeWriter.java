@@ -48,6 +48,10 @@ public class LavendelizeWriter extends Writer {
      */
     @Override
     public void write(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            // the processor might already serve another response
+            throw new IOException("writer closed");
+        }
         try {
             processor.process(CharBuffer.wrap(cbuf), off, len);
         } catch (IOException | RuntimeException e) {
@@ -61,6 +65,9 @@ public class LavendelizeWriter extends Writer {
      */
     @Override
     public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
         try {
             processor.flush();
         } catch (IOException | RuntimeException e) {
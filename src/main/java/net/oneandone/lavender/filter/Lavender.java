@@ -15,6 +15,9 @@
  */
 package net.oneandone.lavender.filter;
 
+import net.oneandone.lavender.filter.processor.LavenderProcessorFactory;
+import net.oneandone.lavender.filter.processor.LavenderRewriteEngine;
+import net.oneandone.lavender.index.IndexPool;
 import net.oneandone.sushi.fs.ExistsException;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
@@ -34,9 +37,14 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -51,11 +59,19 @@ public class Lavender implements Filter, LavenderMBean {
 
     public static final String ALLOW_PROD_DEV_MIX_MODE = "lavender.allowProdDevMixMode";
 
-    private final AtomicReference<Filter> delegate = new AtomicReference<>();
+    private final AtomicReference<Delegate> delegate = new AtomicReference<>();
 
     /** The delegate configuration. */
     protected FilterConfig filterConfig;
 
+    /** null if the index files are not watched */
+    private IndexWatcher watcher;
+
+    private int reloads;
+    private String lastReload = "never";
+    /** null if the last reload succeeded */
+    private String lastReloadError;
+
     @Override
     public void init(FilterConfig config) throws ServletException {
         filterConfig = config;
@@ -72,9 +88,22 @@ public class Lavender implements Filter, LavenderMBean {
             throw se;
         }
 
+        if (productionFilterOpt() != null) {
+            startWatcher();
+        }
         registerMBean();
     }
 
+    private void startWatcher() {
+        try {
+            watcher = IndexWatcher.createOpt(Paths.get(filterConfig.getServletContext().getRealPath(""), "WEB-INF"),
+                    Arrays.asList(Paths.get(LAVENDER_IDX).getFileName().toString(), Paths.get(LAVENDER_NODES).getFileName().toString()),
+                    () -> reload("file change"));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("cannot watch index files, reload via jmx only: " + e.getMessage(), e);
+        }
+    }
+
     private void loadFilter() throws ServletException {
         Filter filter = createFilter();
         filter.init(filterConfig);
@@ -83,11 +112,10 @@ public class Lavender implements Filter, LavenderMBean {
     }
 
     private void setFilter(Filter filter) {
-        Filter previousFilter = delegate.get();
-        delegate.set(filter);
+        Delegate previous = delegate.getAndSet(new Delegate(filter));
 
-        if (previousFilter != null) {
-            previousFilter.destroy();
+        if (previous != null) {
+            previous.retire();
         }
     }
 
@@ -154,40 +182,195 @@ public class Lavender implements Filter, LavenderMBean {
     }
 
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        delegate.get().doFilter(request, response, chain);
+        Delegate current;
+
+        while (true) {
+            current = delegate.get();
+            if (current.enter()) {
+                break;
+            }
+            // swapped by a concurrent reload
+        }
+        try {
+            current.filter.doFilter(request, response, chain);
+        } finally {
+            current.leave();
+        }
     }
 
     public boolean getProd() {
-        return delegate.get() instanceof ProductionFilter;
+        return delegate.get().filter instanceof ProductionFilter;
     }
 
     public int getModules() {
-        Filter filter = delegate.get();
+        DevelopmentFilter filter = developmentFilterOpt();
+        return filter == null ? -1 : filter.getModulesCount();
+    }
+
+    public String[] getModuleScans() {
+        DevelopmentFilter filter = developmentFilterOpt();
+        return filter == null ? new String[0] : filter.getModuleScans();
+    }
+
+    public String[] getProcessorPools() {
+        ProductionFilter filter = productionFilterOpt();
+        LavenderProcessorFactory factory = filter == null ? null : filter.getProcessorFactory();
+        List<String> result;
+
+        if (factory == null) {
+            return new String[0];
+        }
+        result = new ArrayList<>();
+        result.add("html: " + factory.getHtmlPool());
+        result.add("css: " + factory.getCssPool());
+        if (factory.getJsPool() != null) {
+            result.add("js: " + factory.getJsPool());
+        }
+        if (factory.getJsonPool() != null) {
+            result.add("json: " + factory.getJsonPool());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    public String[] getRewriteMetrics() {
+        ProductionFilter filter = productionFilterOpt();
+        LavenderProcessorFactory factory = filter == null ? null : filter.getProcessorFactory();
+        List<String> result;
+
+        if (factory == null) {
+            return new String[0];
+        }
+        result = new ArrayList<>(Arrays.asList(factory.getMetrics().lines()));
+        if (factory.getRewriteEngine() instanceof LavenderRewriteEngine) {
+            result.add("index lookup filter: " + ((LavenderRewriteEngine) factory.getRewriteEngine()).getLookupFilter());
+            result.add("node shares: " + ((LavenderRewriteEngine) factory.getRewriteEngine()).getConsistentHash().getShares());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    public String getIndexPool() {
+        return IndexPool.INSTANCE.toString();
+    }
+
+    private ProductionFilter productionFilterOpt() {
+        Filter filter = delegate.get().filter;
+        if (filter instanceof ProductionFilter) {
+            return (ProductionFilter) filter;
+        } else if (filter instanceof FilterList) {
+            for (Filter f : ((FilterList) filter).getFilters()) {
+                if (f instanceof ProductionFilter) {
+                    return (ProductionFilter) f;
+                }
+            }
+        }
+        return null;
+    }
+
+    private DevelopmentFilter developmentFilterOpt() {
+        Filter filter = delegate.get().filter;
         if (filter instanceof DevelopmentFilter) {
-            return ((DevelopmentFilter) filter).getModulesCount();
+            return (DevelopmentFilter) filter;
         } else if (filter instanceof FilterList) {
             for (Filter f : ((FilterList) filter).getFilters()) {
                 if (f instanceof DevelopmentFilter) {
-                    return ((DevelopmentFilter) f).getModulesCount();
+                    return (DevelopmentFilter) f;
                 }
             }
         }
-        return -1;
+        return null;
     }
 
     @Override
     public void reload() {
+        reload("jmx");
+    }
+
+    /**
+     * Builds and initializes a new filter, i.e. loads and validates index and nodes, and swaps it in. Requests in progress
+     * complete with the previous filter, it is destroyed when the last of them leaves. If loading fails, the previous filter
+     * stays in place.
+     */
+    private synchronized void reload(String trigger) {
+        long started;
+
+        started = System.currentTimeMillis();
+        reloads++;
         try {
             loadFilter();
-        } catch (ServletException e) {
+            lastReloadError = null;
+        } catch (ServletException | RuntimeException e) {
             LOG.error("Could not reload filter", e);
+            lastReloadError = new Date(started) + ": " + e.getMessage();
         }
+        lastReload = new Date(started) + " (" + trigger + "): " + (System.currentTimeMillis() - started) + " ms"
+                + (lastReloadError == null ? "" : ", failed");
+    }
+
+    public synchronized String getLastReload() {
+        return reloads + " reloads, last " + lastReload;
     }
 
+    public synchronized String getLastReloadError() {
+        return lastReloadError;
+    }
 
     @Override
     public void destroy() {
-        delegate.get().destroy();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                LOG.warn("cannot close watcher", e);
+            }
+        }
+        delegate.get().retire();
+    }
+
+    /**
+     * Counts the requests in progress, so a filter replaced by reload is destroyed when its last request leaves. Asynchronous
+     * requests leave when the filter chain returns, i.e. they may complete with a destroyed filter.
+     */
+    private static class Delegate {
+        public final Filter filter;
+        private final AtomicInteger active;
+        private volatile boolean retired;
+        private final AtomicBoolean destroyed;
+
+        Delegate(Filter filter) {
+            this.filter = filter;
+            this.active = new AtomicInteger();
+            this.retired = false;
+            this.destroyed = new AtomicBoolean();
+        }
+
+        /** @return false if retired, the caller has to use the new delegate */
+        public boolean enter() {
+            active.incrementAndGet();
+            if (retired) {
+                leave();
+                return false;
+            }
+            return true;
+        }
+
+        public void leave() {
+            if (active.decrementAndGet() == 0 && retired) {
+                destroy();
+            }
+        }
+
+        public void retire() {
+            retired = true;
+            if (active.get() == 0) {
+                destroy();
+            }
+        }
+
+        private void destroy() {
+            if (destroyed.compareAndSet(false, true)) {
+                filter.destroy();
+            }
+        }
     }
 
 }
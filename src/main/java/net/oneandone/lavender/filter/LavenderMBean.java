@@ -18,5 +18,21 @@ package net.oneandone.lavender.filter;
 public interface LavenderMBean {
     boolean getProd();
     int getModules();
+    /** @return background refresh statistics of the development filter, one line per module; empty in production mode */
+    String[] getModuleScans();
+    /** @return processor pool statistics (html, css and - if enabled - js); empty in development mode */
+    String[] getProcessorPools();
+    /**
+     * @return rewrite statistics per content type (responses, chars, urls, gzip bytes, latency) and hit rates of the index lookup
+     * filter; empty in development mode
+     */
+    String[] getRewriteMetrics();
+    /** @return indexes, entries and estimated String.intern savings of the production filters loaded by this class loader */
+    String getIndexPool();
+    /** @return number of reloads and time, trigger and duration of the last one */
+    String getLastReload();
+    /** @return null if the last reload succeeded */
+    String getLastReloadError();
+    /** loads a new filter and swaps it in; keeps the current filter if loading fails */
     void reload();
 }
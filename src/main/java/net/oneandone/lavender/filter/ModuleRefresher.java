@@ -0,0 +1,197 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import net.oneandone.lavender.modules.BitbucketModule;
+import net.oneandone.lavender.modules.Module;
+import net.oneandone.lavender.modules.SvnModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-scans modules in a background thread, so request threads don't pay for Module.loadEntries. Requests are served from the
+ * previous entries until the new ones are swapped in. Only modules with loaded entries are refreshed, unused modules are
+ * still loaded on demand.
+ *
+ * Intervals are configured per module type with system properties "lavender.refresh.node", "lavender.refresh.svn" and
+ * "lavender.refresh.bitbucket", in seconds. 0 disables background refresh for the respective type; these modules are
+ * invalidated inline as before.
+ */
+public class ModuleRefresher implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ModuleRefresher.class);
+
+    public static final String INTERVAL_PREFIX = "lavender.refresh.";
+
+    public static final String NODE = "node";
+    public static final String SVN = "svn";
+    public static final String BITBUCKET = "bitbucket";
+
+    /** don't trigger out-of-schedule refreshes more often than this; same as Module.softInvalidateEntries */
+    private static final long MIN_REQUEST_INTERVAL = 5000;
+
+    public static ModuleRefresher create(List<Module> modules) {
+        Map<String, Integer> intervals;
+
+        intervals = new HashMap<>();
+        intervals.put(NODE, Integer.getInteger(INTERVAL_PREFIX + NODE, 0));
+        intervals.put(SVN, Integer.getInteger(INTERVAL_PREFIX + SVN, 10));
+        intervals.put(BITBUCKET, Integer.getInteger(INTERVAL_PREFIX + BITBUCKET, 30));
+        return new ModuleRefresher(modules, intervals);
+    }
+
+    public static String type(Module<?> module) {
+        if (module instanceof SvnModule) {
+            return SVN;
+        } else if (module instanceof BitbucketModule) {
+            return BITBUCKET;
+        } else {
+            return NODE;
+        }
+    }
+
+    //--
+
+    private final Map<Module<?>, Scan> scans;
+    private final ScheduledExecutorService executor;
+
+    public ModuleRefresher(List<Module> modules, Map<String, Integer> intervals) {
+        Integer interval;
+
+        this.scans = new LinkedHashMap<>();
+        for (Module<?> module : modules) {
+            interval = intervals.get(type(module));
+            if (interval != null && interval > 0) {
+                scans.put(module, new Scan(module, interval));
+            }
+        }
+        if (scans.isEmpty()) {
+            executor = null;
+        } else {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread;
+
+                thread = new Thread(r, "lavender-module-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Scan scan : scans.values()) {
+                executor.scheduleWithFixedDelay(() -> scheduled(scan), scan.interval, scan.interval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /** @return true if the specified module is refreshed in the background */
+    public boolean isRefreshed(Module<?> module) {
+        return scans.containsKey(module);
+    }
+
+    /** Asks for an out-of-schedule refresh, e.g. because a resource is outdated. Returns immediately. */
+    public void requestRefresh(Module<?> module) {
+        Scan scan;
+
+        scan = scans.get(module);
+        if (scan == null || System.currentTimeMillis() - module.getLastScan() < MIN_REQUEST_INTERVAL) {
+            return;
+        }
+        if (scan.pending.compareAndSet(false, true)) {
+            executor.execute(() -> refresh(scan));
+        }
+    }
+
+    private void scheduled(Scan scan) {
+        if (scan.pending.compareAndSet(false, true)) {
+            refresh(scan);
+        }
+    }
+
+    private void refresh(Scan scan) {
+        try {
+            if (scan.module.loadedEntries() == null) {
+                // not used yet or invalidated - loaded on demand
+                return;
+            }
+            scan.module.refreshEntries();
+            scan.count++;
+            scan.lastError = null;
+        } catch (IOException | RuntimeException e) {
+            scan.failures++;
+            scan.lastError = e.getMessage();
+            LOG.warn(scan.module.getName() + ": background refresh failed: " + e.getMessage(), e);
+        } finally {
+            scan.pending.set(false);
+        }
+    }
+
+    /** @return one line per module refreshed in the background */
+    public String[] getScans() {
+        List<String> result;
+
+        result = new ArrayList<>();
+        for (Scan scan : scans.values()) {
+            result.add(scan.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    //--
+
+    private static class Scan {
+        public final Module<?> module;
+        /** seconds */
+        public final int interval;
+        public final AtomicBoolean pending;
+        public volatile int count;
+        public volatile int failures;
+        public volatile String lastError;
+
+        Scan(Module<?> module, int interval) {
+            this.module = module;
+            this.interval = interval;
+            this.pending = new AtomicBoolean(false);
+            this.count = 0;
+            this.failures = 0;
+            this.lastError = null;
+        }
+
+        public String toString() {
+            long lastScan;
+
+            lastScan = module.getLastScan();
+            return module.getName() + " (" + type(module) + ", every " + interval + "s): " + count + " refreshes, " + failures + " failures, "
+                    + (lastScan == 0 ? "not scanned" : "last scan " + module.getLastScanDuration() + " ms at " + new Date(lastScan))
+                    + (lastError == null ? "" : ", last error: " + lastError);
+        }
+    }
+}
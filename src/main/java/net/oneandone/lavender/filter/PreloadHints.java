@@ -0,0 +1,145 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Remembers the rewritten stylesheets and scripts in the head of html pages, to send them as Link headers (preload for the
+ * assets, preconnect for the cdn nodes) with later responses for the same path. The number of pages is bounded, least
+ * recently used pages are dropped. Hints are bound to the filter instance, so they are discarded when the index is reloaded.
+ *
+ * Opt-in: system property "lavender.preload.pages" specifies the number of pages; 0 (the default) disables this feature.
+ */
+public class PreloadHints {
+    public static final String PAGES_PROPERTY = "lavender.preload.pages";
+
+    /** per page; assets after this are not preloaded */
+    public static final int MAX_ASSETS = 8;
+
+    /** @return null if disabled */
+    public static PreloadHints createOpt() {
+        int pages;
+
+        pages = Integer.getInteger(PAGES_PROPERTY, 0);
+        return pages > 0 ? new PreloadHints(pages) : null;
+    }
+
+    /**
+     * @return key for get and recorder; hints contain absolute node urls, which differ with the scheme of the request and for
+     * multiplexed clients
+     */
+    public static String key(String scheme, String path, boolean multiplexed) {
+        return (multiplexed ? "h2:" : "") + scheme + ":" + path;
+    }
+
+    //--
+
+    /** path mapped to Link header values */
+    private final Map<String, List<String>> pages;
+
+    public PreloadHints(int maxPages) {
+        this.pages = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /** @return Link header values for the specified path, empty if nothing is known */
+    public List<String> get(String path) {
+        List<String> result;
+
+        synchronized (pages) {
+            result = pages.get(path);
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    public int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    /** @return listener for HtmlProcessor.setHeadListener; invoke done when the response is complete */
+    public Recorder recorder(String path) {
+        return new Recorder(path);
+    }
+
+    public class Recorder implements BiConsumer<String, String> {
+        private final String path;
+        private final Set<String> origins;
+        private final List<String> preloads;
+
+        private Recorder(String path) {
+            this.path = path;
+            this.origins = new LinkedHashSet<>();
+            this.preloads = new ArrayList<>();
+        }
+
+        @Override
+        public void accept(String url, String as) {
+            String origin;
+
+            if (preloads.size() >= MAX_ASSETS) {
+                return;
+            }
+            origin = origin(url);
+            if (origin != null) {
+                origins.add("<" + origin + ">; rel=preconnect");
+            }
+            preloads.add("<" + url + ">; rel=preload; as=" + as);
+        }
+
+        public void done() {
+            List<String> links;
+
+            if (preloads.isEmpty()) {
+                synchronized (pages) {
+                    pages.remove(path);
+                }
+            } else {
+                links = new ArrayList<>(origins);
+                links.addAll(preloads);
+                synchronized (pages) {
+                    pages.put(path, Collections.unmodifiableList(links));
+                }
+            }
+        }
+    }
+
+    /** @return scheme, host and port of the absolute url, null if the url is not absolute */
+    static String origin(String url) {
+        int idx;
+        int end;
+
+        idx = url.indexOf("://");
+        if (idx == -1) {
+            return null;
+        }
+        end = url.indexOf('/', idx + 3);
+        return end == -1 ? url : url.substring(0, end);
+    }
+}
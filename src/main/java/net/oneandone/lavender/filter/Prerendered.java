@@ -0,0 +1,293 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import net.oneandone.lavender.filter.processor.Processor;
+import net.oneandone.lavender.filter.processor.ProcessorFactory;
+import net.oneandone.sushi.fs.Node;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static html and css files of the war, rewritten at build time by "lavender war -prerender". ProductionFilter serves them
+ * without runtime processing, but still runs the filter chain, so downstream filters and the servlet decide about access and
+ * set their headers; only the body of a 200 response is replaced by the prerendered file. The manifest lists the context path the files were rendered for, followed by one webapp path
+ * per line. Rewritten copies are stored twice - below DIR + "http/" and DIR + "https/" - because cdn urls depend on the scheme.
+ * Files are read and written as UTF-8.
+ */
+public class Prerendered {
+    public static final String MANIFEST = "WEB-INF/lavender.prerender";
+    public static final String DIR = "WEB-INF/lavender-prerender/";
+    public static final String[] SCHEMES = { "http", "https" };
+
+    /** @return content type for paths that can be prerendered, null otherwise */
+    public static String contentType(String path) {
+        String lower;
+
+        if (path.startsWith("WEB-INF/") || path.startsWith("META-INF/")) {
+            return null;
+        }
+        lower = path.toLowerCase();
+        if (lower.endsWith(".html") || lower.endsWith(".htm")) {
+            return "text/html";
+        } else if (lower.endsWith(".css")) {
+            return "text/css";
+        } else {
+            return null;
+        }
+    }
+
+    /** @return contextPath normalized to start and end with a slash, the way ProductionFilter passes it to processors */
+    public static String normalizeContextPath(String contextPath) {
+        if (!contextPath.startsWith("/")) {
+            contextPath = "/" + contextPath;
+        }
+        return contextPath.endsWith("/") ? contextPath : contextPath + "/";
+    }
+
+    /** @return content as ProductionFilter would deliver it for the specified webapp path */
+    public static String render(ProcessorFactory factory, String scheme, String contextPath, String path, String content) throws IOException {
+        Processor processor;
+        StringWriter dest;
+
+        processor = factory.createProcessor(contentType(path), URI.create(scheme + "://localhost" + contextPath + path), contextPath);
+        if (processor == null) {
+            return content;
+        }
+        dest = new StringWriter(content.length() + content.length() / 4);
+        processor.setWriter(dest);
+        processor.process(content, 0, content.length());
+        processor.close();
+        return dest.toString();
+    }
+
+    public static String manifest(String contextPath, List<String> paths) {
+        StringBuilder result;
+
+        result = new StringBuilder(contextPath).append('\n');
+        for (String path : paths) {
+            result.append(path).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** @return null if the webapp has no manifest */
+    public static Prerendered loadOpt(Node webapp) throws IOException {
+        Node<?> manifest;
+        List<String> lines;
+
+        manifest = webapp.join(MANIFEST);
+        if (!manifest.exists()) {
+            return null;
+        }
+        lines = manifest.readLines();
+        if (lines.isEmpty()) {
+            throw new IOException(manifest + ": missing context path");
+        }
+        return new Prerendered(webapp.join(DIR), lines.get(0), lines.subList(1, lines.size()));
+    }
+
+    //--
+
+    private final Node dir;
+    private final String contextPath;
+    private final Set<String> paths;
+
+    public Prerendered(Node dir, String contextPath, List<String> paths) {
+        this.dir = dir;
+        this.contextPath = contextPath;
+        this.paths = new HashSet<>(paths);
+    }
+
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(paths);
+    }
+
+    /** @return webapp path if the request is served from a prerendered file, null otherwise */
+    public String lookup(HttpServletRequest request) {
+        String method;
+        String uri;
+        String path;
+
+        method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return null;
+        }
+        if (!contextPath.equals(request.getContextPath() + "/")) {
+            return null;
+        }
+        uri = request.getRequestURI();
+        if (uri.length() < contextPath.length() || uri.indexOf('%') != -1 || uri.indexOf(';') != -1) {
+            return null;
+        }
+        path = uri.substring(contextPath.length());
+        return paths.contains(path) ? path : null;
+    }
+
+    /** Runs the chain with a response that discards the body, then serves the prerendered file if the chain responded with 200 */
+    public void doFilter(String path, HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        chain.doFilter(request, new DiscardingResponse(response));
+        if (response.getStatus() == HttpServletResponse.SC_OK && !response.isCommitted() && !request.isAsyncStarted()) {
+            serve(path, request, response);
+        }
+    }
+
+    /** Streams the prerendered file; handles If-Modified-Since and gzips css like LavendelizeHttpServletResponse */
+    public void serve(String path, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Node file;
+        long modified;
+        String contentType;
+        boolean gzip;
+        OutputStream dest;
+
+        file = dir.join("https".equals(request.getScheme()) ? "https" : "http", path);
+        modified = file.getLastModified() / 1000 * 1000;
+        if (request.getDateHeader("If-Modified-Since") >= modified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        contentType = contentType(path);
+        gzip = "text/css".equals(contentType) && Gzip.canGzip(request);
+        response.setContentType(contentType + ";charset=UTF-8");
+        response.setDateHeader("Last-Modified", modified);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.addHeader("Vary", "Accept-Encoding");
+        } else {
+            response.setContentLength((int) file.size());
+        }
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        dest = response.getOutputStream();
+        if (gzip) {
+            dest = new GZIPOutputStream(dest);
+        }
+        try (InputStream src = file.newInputStream()) {
+            file.getWorld().getBuffer().copy(src, dest);
+        }
+        if (gzip) {
+            ((GZIPOutputStream) dest).finish();
+        }
+    }
+
+    public String toString() {
+        return paths.size() + " files for context path " + contextPath;
+    }
+
+    //--
+
+    /** Passes status and headers, discards the body and its length, and does not commit */
+    private static class DiscardingResponse extends HttpServletResponseWrapper {
+        private static final String CONTENT_LENGTH = "Content-Length";
+
+        DiscardingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            return new PrintWriter(new Writer() {
+                @Override
+                public void write(char[] cbuf, int off, int len) {
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        /** Servlet 3.1, called by newer containers */
+        public void setContentLengthLong(long len) {
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addIntHeader(name, value);
+            }
+        }
+    }
+}
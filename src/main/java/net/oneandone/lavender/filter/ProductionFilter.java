@@ -19,6 +19,7 @@ import net.oneandone.lavender.filter.processor.LavenderProcessorFactory;
 import net.oneandone.lavender.filter.processor.LavenderRewriteEngine;
 import net.oneandone.lavender.filter.processor.RewriteEngine;
 import net.oneandone.lavender.index.Index;
+import net.oneandone.lavender.index.IndexPool;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
 import org.slf4j.Logger;
@@ -43,8 +44,31 @@ import java.util.Map;
 public class ProductionFilter implements Filter {
     private static final Logger LOG = LoggerFactory.getLogger(ProductionFilter.class);
 
+    /** request attribute for the Pending state of an asynchronous request */
+    private static final String PENDING = ProductionFilter.class.getName() + ".pending";
+
+    /** Lavendelized response of a request, shared by the filter passes of async dispatches */
+    private static class Pending {
+        public final LavendelizeHttpServletResponse response;
+        public final LavendelizeAsyncContext.Once completion;
+
+        Pending(LavendelizeHttpServletResponse response, LavendelizeAsyncContext.Once completion) {
+            this.response = response;
+            this.completion = completion;
+        }
+    }
+
     private LavenderProcessorFactory processorFactory;
 
+    /** interned in IndexPool.INSTANCE; null if not initialized */
+    private Index index;
+
+    /** null if disabled */
+    private PreloadHints preloadHints;
+
+    /** null if the war has no prerendered files */
+    private Prerendered prerendered;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         World world;
@@ -60,12 +84,20 @@ public class ProductionFilter implements Filter {
         Node indexSource = webapp.join(Lavender.LAVENDER_IDX);
         Node nodesSource = webapp.join(Lavender.LAVENDER_NODES);
         try {
-            Index index = Index.load(indexSource);
+            Index loaded = Index.load(indexSource);
+            IndexPool.INSTANCE.intern(loaded);
+            index = loaded;
             RewriteEngine rewriteEngine = LavenderRewriteEngine.load(index, nodesSource);
             processorFactory = new LavenderProcessorFactory(rewriteEngine);
+            preloadHints = PreloadHints.createOpt();
+            prerendered = Prerendered.loadOpt(webapp);
+            if (prerendered != null) {
+                LOG.info("prerendered: " + prerendered);
+            }
             LOG.info("Lavender prod filter");
         } catch (IOException e) {
             e.printStackTrace();
+            destroy();
             throw new ServletException("Could not initialize Lavender production filter", e);
         }
 
@@ -77,19 +109,50 @@ public class ProductionFilter implements Filter {
         StringBuffer url;
         LavendelizeHttpServletRequest lavenderRequest;
         LavendelizeHttpServletResponse lavenderResponse;
+        PreloadHints.Recorder recorder;
+        Pending pending;
+        String path;
+        boolean multiplexed;
+        String hintsKey;
 
         try {
             HttpServletRequest request = (HttpServletRequest) servletRequest;
             HttpServletResponse response = (HttpServletResponse) servletResponse;
 
-            url = request.getRequestURL();
-            URI requestURI = URI.create(url.toString());
-
-            // use custom request and response objects
+            pending = (Pending) request.getAttribute(PENDING);
+            if (pending == null) {
+                multiplexed = processorFactory.hasSingleOrigin() && isMultiplexed(request.getProtocol());
+                // prerendered files reference sharded nodes
+                path = prerendered == null || multiplexed ? null : prerendered.lookup(request);
+                if (path != null) {
+                    // rewritten at build time
+                    prerendered.doFilter(path, request, response, chain);
+                    return;
+                }
+                url = request.getRequestURL();
+                URI requestURI = URI.create(url.toString());
+
+                // use custom response object
+                lavenderResponse = new LavendelizeHttpServletResponse(response, processorFactory,
+                        requestURI, request.getHeader("User-Agent"), request.getContextPath() + "/", Gzip.canGzip(request));
+                lavenderResponse.setMetrics(processorFactory.getMetrics());
+                lavenderResponse.setMultiplexed(multiplexed);
+                if (preloadHints != null) {
+                    hintsKey = PreloadHints.key(request.getScheme(), request.getRequestURI(), multiplexed);
+                    recorder = preloadHints.recorder(hintsKey);
+                    lavenderResponse.setPreload(preloadHints.get(hintsKey), recorder);
+                } else {
+                    recorder = null;
+                }
+                pending = new Pending(lavenderResponse,
+                        new LavendelizeAsyncContext.Once(() -> complete(url, lavenderResponse, recorder)));
+                logRequest(url, request);
+            } else {
+                // async dispatch: continue the lavendelized response of the previous pass
+                request.removeAttribute(PENDING);
+            }
             lavenderRequest = new LavendelizeHttpServletRequest(request);
-            lavenderResponse = new LavendelizeHttpServletResponse(response, processorFactory,
-                    requestURI, request.getHeader("User-Agent"), request.getContextPath() + "/", Gzip.canGzip(request));
-            logRequest(url, request);
+            lavenderRequest.setAsyncCompletion(pending.completion, pending.response);
         } catch (RuntimeException re) {
             LOG.error("Error in Lavendelizer.doFilter()", re);
             throw re;
@@ -97,22 +160,58 @@ public class ProductionFilter implements Filter {
 
         // continue the request
         // No exception handling at this point. Exceptions in processors are handled in LavendelizeOutputStream/Writer
-        chain.doFilter(lavenderRequest, lavenderResponse);
+        chain.doFilter(lavenderRequest, pending.response);
 
+        if (lavenderRequest.isAsyncStarted()) {
+            // the response is completed by LavendelizeAsyncContext or by the pass of an async dispatch
+            servletRequest.setAttribute(PENDING, pending);
+            return;
+        }
         try {
-            // close the response to make sure all buffers are flushed
-            lavenderResponse.close();
-
-            logResponse(url, lavenderResponse);
+            pending.completion.complete();
         } catch (IOException | RuntimeException e) {
             LOG.error("Error in Lavendelizer.doFilter()", e);
             throw e;
         }
     }
 
-    @Override
-    public void destroy() {
+    private void complete(StringBuffer url, LavendelizeHttpServletResponse lavenderResponse, PreloadHints.Recorder recorder) throws IOException {
+        // close the response to make sure all buffers are flushed
+        lavenderResponse.close();
+        if (recorder != null && lavenderResponse.getStatus() == HttpServletResponse.SC_OK) {
+            recorder.done();
+        }
+
+        logResponse(url, lavenderResponse);
+    }
+
+    /** @return true for HTTP/2 and later, i.e. protocols that multiplex requests over a single connection */
+    public static boolean isMultiplexed(String protocol) {
+        int major;
+
+        if (protocol == null || !protocol.startsWith("HTTP/") || protocol.length() < 6) {
+            return false;
+        }
+        major = protocol.charAt(5) - '0';
+        return major >= 2 && major <= 9;
+    }
 
+    /** @return null if not initialized */
+    public LavenderProcessorFactory getProcessorFactory() {
+        return processorFactory;
+    }
+
+    /** @return null if not initialized or if the war has no prerendered files */
+    public Prerendered getPrerendered() {
+        return prerendered;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (index != null) {
+            IndexPool.INSTANCE.release(index);
+            index = null;
+        }
     }
 
     private void logRequest(StringBuffer url, HttpServletRequest httpRequest) {
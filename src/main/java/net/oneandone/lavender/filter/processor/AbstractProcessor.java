@@ -41,9 +41,24 @@ public abstract class AbstractProcessor implements Processor {
     /** The context path used, used to resolve URI references. Always starts and ends with a "/" */
     protected String contextPath;
 
+    /** Buffers larger than this number of chars are not retained when a processor is reset. */
+    protected static final int MAX_RETAINED = 16 * 1024;
+
     /** Buffer where a potential URI string is stored before it is rewritten. */
     protected StringBuilder uriBuffer = new StringBuilder(128);
 
+    /** Returns this processor to its pool when it's closed; null if not pooled. */
+    private Runnable release;
+
+    /** Where to report statistics when this processor is closed; null if not recorded. */
+    private RewriteMetrics.Counters metrics;
+
+    /** Statistics of the current response. */
+    protected long chars;
+    protected int rewrites;
+    protected int misses;
+    protected long nanos;
+
     /**
      * Subclass constructor.
      * @param logger
@@ -86,10 +101,43 @@ public abstract class AbstractProcessor implements Processor {
             log.debug("Processing chars.length=" + chars.length() + ", offset=" + offset + ", length=" + length);
         }
 
-        for (int i = offset; i < offset + length; i++) {
+        long started = System.nanoTime();
+        int end = offset + length;
+        int i = skip(chars, offset, end);
+        while (i < end) {
             char c = chars.charAt(i);
             process(c);
+            i = skip(chars, i + 1, end);
         }
+        this.chars += length;
+        nanos += System.nanoTime() - started;
+    }
+
+    /**
+     * Lets subclasses copy chars that need no processing in bulk, bypassing process(char).
+     * @return index of the next char to process
+     */
+    protected int skip(CharSequence chars, int pos, int end) throws IOException {
+        return pos;
+    }
+
+    /** Rewrites the specified url and counts the result. */
+    protected String rewrite(String uri) {
+        String result;
+
+        result = rewriteEngine.rewrite(uri, baseURI, contextPath);
+        if (result.equals(uri)) {
+            misses++;
+        } else {
+            rewrites++;
+        }
+        return result;
+    }
+
+    /** Adds the url counts of a nested processor to this processor. */
+    protected void countRewrites(AbstractProcessor nested) {
+        rewrites += nested.rewrites;
+        misses += nested.misses;
     }
 
     /**
@@ -105,18 +153,68 @@ public abstract class AbstractProcessor implements Processor {
      * {@inheritDoc}
      */
     public void flush() throws IOException {
+        long started = System.nanoTime();
         if (uriBuffer.length() > 0) {
             out.write(uriBuffer.toString());
             uriBuffer.setLength(0);
         }
         out.flush();
+        nanos += System.nanoTime() - started;
     }
 
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Closing again is a no-op, as long as the processor was not handed out by its pool again.
      */
     public void close() throws IOException {
+        long started;
+
+        if (out == null) {
+            // already closed and reset
+            return;
+        }
         flush();
+        started = System.nanoTime();
         out.close();
+        nanos += System.nanoTime() - started;
+        if (metrics != null) {
+            metrics.record(chars, rewrites, misses, nanos);
+        }
+        if (release != null) {
+            release.run();
+        }
+    }
+
+    void setRelease(Runnable release) {
+        this.release = release;
+    }
+
+    void setMetrics(RewriteMetrics.Counters metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Prepares this processor for the next response: clears state and references, and drops buffers that grew beyond
+     * MAX_RETAINED. Subclasses have to call super.
+     */
+    public void reset() {
+        out = null;
+        rewriteEngine = null;
+        baseURI = null;
+        contextPath = null;
+        metrics = null;
+        chars = 0;
+        rewrites = 0;
+        misses = 0;
+        nanos = 0;
+        uriBuffer = retain(uriBuffer, 128);
+    }
+
+    /** @return buffer cleared, or a new one with the initial capacity if buffer is too large to be retained */
+    protected static StringBuilder retain(StringBuilder buffer, int initial) {
+        if (buffer.capacity() > MAX_RETAINED) {
+            return new StringBuilder(initial);
+        }
+        buffer.setLength(0);
+        return buffer;
     }
 }
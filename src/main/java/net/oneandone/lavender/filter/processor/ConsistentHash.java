@@ -20,38 +20,82 @@ import net.oneandone.lavender.index.Index;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
  * See http://weblogs.java.net/blog/2007/11/27/consistent-hashing"
+ *
+ * Nodes have a weight, a node gets weight * numberOfReplicas points on the circle. With a load factor &gt; 0, no node owns more
+ * than loadFactor times its fair (i.e. weighted) share of the key space; arcs beyond that are passed to the next points
+ * on the circle. The circle is compiled into sorted arrays whenever nodes are added or removed, so getNodeForHash is a
+ * binary search.
  */
 public class ConsistentHash {
+    private static final long KEY_SPACE = 1L << 32;
 
     protected final int numberOfReplicas;
+    /** 0 for unbounded */
+    protected final double loadFactor;
     protected final SortedMap<Integer, String> circle = new TreeMap<>();
+    protected final Map<String, Integer> weights = new HashMap<>();
+
+    /** compiled circle */
+    private volatile Ring ring;
 
     public ConsistentHash(int numberOfReplicas) {
         this(numberOfReplicas, new String[0]);
     }
 
     public ConsistentHash(int numberOfReplicas, String[] nodes) {
-        this.numberOfReplicas = numberOfReplicas;
+        this(numberOfReplicas, 0, nodes);
+    }
 
+    public ConsistentHash(int numberOfReplicas, double loadFactor, String[] nodes) {
+        if (loadFactor != 0 && loadFactor < 1) {
+            throw new IllegalArgumentException("load factor: " + loadFactor);
+        }
+        this.numberOfReplicas = numberOfReplicas;
+        this.loadFactor = loadFactor;
+        this.ring = new Ring(new int[0], new String[0]);
         for (String node : nodes) {
             addNode(node);
         }
     }
 
     public void addNode(String node) {
-        for (int i = 0; i < numberOfReplicas; i++) {
+        addNode(node, 1);
+    }
+
+    public void addNode(String node, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException(node + ": invalid weight " + weight);
+        }
+        removePoints(node);
+        weights.put(node, weight);
+        for (int i = 0; i < numberOfReplicas * weight; i++) {
             circle.put(key(node + "-" + i), node);
         }
+        compile();
     }
 
     public void removeNode(String node) {
-        for (int i = 0; i < numberOfReplicas; i++) {
-            circle.remove(key(node + "-" + i));
+        removePoints(node);
+        weights.remove(node);
+        compile();
+    }
+
+    private void removePoints(String node) {
+        Integer weight;
+
+        weight = weights.get(node);
+        if (weight != null) {
+            for (int i = 0; i < numberOfReplicas * weight; i++) {
+                circle.remove(key(node + "-" + i));
+            }
         }
     }
 
@@ -62,13 +106,108 @@ public class ConsistentHash {
      * @return the node
      */
     public String getNodeForHash(byte[] md5) {
-        if (circle.isEmpty()) {
+        Ring current;
+        int idx;
+
+        current = ring;
+        if (current.keys.length == 0) {
             throw new IllegalStateException("No node in hash circle.");
         }
-        int key = key(md5);
-        SortedMap<Integer, String> tailMap = circle.tailMap(key);
-        key = tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey();
-        return circle.get(key);
+        idx = Arrays.binarySearch(current.keys, key(md5));
+        if (idx < 0) {
+            idx = -idx - 1;
+            if (idx == current.keys.length) {
+                idx = 0;
+            }
+        }
+        return current.owners[idx];
+    }
+
+    /** @return nodes mapped to the fraction of the key space they own */
+    public Map<String, Double> getShares() {
+        Ring current;
+        Map<String, Double> result;
+
+        current = ring;
+        result = new TreeMap<>();
+        for (int i = 0; i < current.keys.length; i++) {
+            result.merge(current.owners[i], (double) arc(current.keys, i) / KEY_SPACE, Double::sum);
+        }
+        return result;
+    }
+
+    private void compile() {
+        int[] newKeys;
+        String[] newOwners;
+        int i;
+
+        newKeys = new int[circle.size()];
+        newOwners = new String[newKeys.length];
+        i = 0;
+        for (Map.Entry<Integer, String> entry : circle.entrySet()) {
+            newKeys[i] = entry.getKey();
+            newOwners[i] = entry.getValue();
+            i++;
+        }
+        ring = loadFactor > 0 && newKeys.length > 0 ? bound(newKeys, newOwners) : new Ring(newKeys, newOwners);
+    }
+
+    /**
+     * Passes arcs - or the part of an arc - that exceed the capacity of their node to the next nodes on the circle that have capacity
+     * left. Arcs are split by adding points, so the bound is exact. Quadratic in the number of points in the worst case (when
+     * most nodes are full); runs when nodes are added or removed only, not per lookup.
+     */
+    private Ring bound(int[] sortedKeys, String[] arcOwners) {
+        Map<String, Long> capacity;
+        long totalWeight;
+        TreeMap<Integer, String> points;
+        long start;
+        long remaining;
+        String candidate;
+        long take;
+        Ring result;
+        int i;
+
+        totalWeight = 0;
+        for (int weight : weights.values()) {
+            totalWeight += weight;
+        }
+        capacity = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            capacity.put(entry.getKey(), (long) Math.ceil(loadFactor * KEY_SPACE * entry.getValue() / totalWeight));
+        }
+        points = new TreeMap<>();
+        for (int point = 0; point < sortedKeys.length; point++) {
+            remaining = arc(sortedKeys, point);
+            start = (long) sortedKeys[point] - remaining;
+            for (int j = 0; remaining > 0 && j < sortedKeys.length; j++) {
+                candidate = arcOwners[(point + j) % sortedKeys.length];
+                take = Math.min(capacity.get(candidate), remaining);
+                if (take > 0) {
+                    start += take;
+                    remaining -= take;
+                    capacity.put(candidate, capacity.get(candidate) - take);
+                    points.put((int) start, candidate);
+                }
+            }
+        }
+        result = new Ring(new int[points.size()], new String[points.size()]);
+        i = 0;
+        for (Map.Entry<Integer, String> entry : points.entrySet()) {
+            result.keys[i] = entry.getKey();
+            result.owners[i] = entry.getValue();
+            i++;
+        }
+        return result;
+    }
+
+    /** @return size of the arc that ends at sortedKeys[i] */
+    private static long arc(int[] sortedKeys, int i) {
+        if (i == 0) {
+            return KEY_SPACE - ((long) sortedKeys[sortedKeys.length - 1] - sortedKeys[0]);
+        } else {
+            return (long) sortedKeys[i] - sortedKeys[i - 1];
+        }
     }
 
     /**
@@ -111,4 +250,17 @@ public class ConsistentHash {
         }
         return digest.digest(bytes);
     }
+
+    //--
+
+    /** sorted keys and the node that owns the arc ending at the respective key */
+    private static class Ring {
+        public final int[] keys;
+        public final String[] owners;
+
+        Ring(int[] keys, String[] owners) {
+            this.keys = keys;
+            this.owners = owners;
+        }
+    }
 }
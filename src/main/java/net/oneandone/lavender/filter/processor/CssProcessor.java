@@ -39,6 +39,12 @@ public class CssProcessor extends AbstractProcessor {
         super(LOG);
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        state = State.OTHER;
+    }
+
     /**
      * An enum to track the state of this processor.
      */
@@ -134,7 +140,7 @@ public class CssProcessor extends AbstractProcessor {
             out.write(uriBuffer.toString());
         } else {
             out.write(uriBuffer.substring(0, start));
-            out.write(rewriteEngine.rewrite(uri, baseURI, contextPath));
+            out.write(rewrite(uri));
             out.write(uriBuffer.substring(end));
         }
         uriBuffer.setLength(0);
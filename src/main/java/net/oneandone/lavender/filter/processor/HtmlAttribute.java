@@ -17,4 +17,17 @@ package net.oneandone.lavender.filter.processor;
 
 public interface HtmlAttribute {
     boolean attributeMatches(String attributeName);
+
+    /**
+     * @return the (case-insensitive) name this attribute matches, or null if it can only be matched with attributeMatches.
+     *         Named attributes are recognized by a table lookup.
+     */
+    default String getName() {
+        return null;
+    }
+
+    /** Same as attributeMatches(String) for the name in chars[start, end); override to avoid creating the String. */
+    default boolean attributeMatches(CharSequence chars, int start, int end) {
+        return attributeMatches(chars.subSequence(start, end).toString());
+    }
 }
@@ -28,6 +28,11 @@ public class HtmlElement {
         this.attributeValues = attributeValues;
     }
 
+    /** to reuse this element for the next tag */
+    void setTag(HtmlTag tag) {
+        this.tag = tag;
+    }
+
     public HtmlTag getTag() {
         return tag;
     }
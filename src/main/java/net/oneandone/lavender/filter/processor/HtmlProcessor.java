@@ -19,10 +19,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.BiConsumer;
 
 public class HtmlProcessor extends AbstractProcessor {
 
@@ -33,17 +33,19 @@ public class HtmlProcessor extends AbstractProcessor {
     private static final HtmlAttribute OTHER_HTML_ATTRIBUTE = x -> false;
 
     /**
-     * Parse URLs from image candidate strings in "srcset" according to https://html.spec.whatwg.org/multipage/images.html#srcset-attributes
-     * Matching groups:
-     * <ul>
-     *     <li>ASCII Whitespace (optional</li>
-     *     <li>URL</li>
-     *     <li>ASCII Whitespace (optional)</li>
-     *     <li>Remainder (Width or Density descriptors) including ASCII Whitespace (optional)</li>
-     *     <li>Candidate separator (',') or end of line</li>
-     * </ul>
+     * Elements whose content is not parsed as html; their content is copied up to the close tag. Style content is passed
+     * to a CssProcessor. Note that template content is normal html and may contain urls to rewrite.
      */
-    private static final Pattern SRCSET_PATTERN = Pattern.compile("([\\t\\n\\f\\r ]*)([^,\\t\\n\\f\\r ]+)([\\t\\n\\f\\r ]*)([^,]*)(,|$)");
+    private static final String[] RAW_TEXT_ELEMENTS = { "script", "textarea", "style" };
+    private static final int RAW_TEXT_STYLE = 2;
+    private static final NameTable RAW_TEXT_NAMES;
+
+    static {
+        RAW_TEXT_NAMES = new NameTable(RAW_TEXT_ELEMENTS.length);
+        for (int i = 0; i < RAW_TEXT_ELEMENTS.length; i++) {
+            RAW_TEXT_NAMES.put(RAW_TEXT_ELEMENTS[i], i);
+        }
+    }
 
     /** The main state of this processor. */
     protected State state = State.NULL;
@@ -54,10 +56,19 @@ public class HtmlProcessor extends AbstractProcessor {
      */
     protected HtmlTag currentTag;
 
+    /** index of currentTag in knownTags, knownTags.length for OTHER_HTML_TAG */
+    private int currentTagIndex;
+
     /** The current attribute within a currentTag. */
     protected HtmlAttribute currentAttribute;
+    /** index of currentAttribute in knownAttributes, -1 for OTHER_HTML_ATTRIBUTE */
+    private int currentAttributeIndex;
     private int attributeValueStartIndex = -1;
     private int attributeNameStartIndex = -1;
+    /** length of the tag name in tagBuffer, properly set after TAG_START */
+    private int tagNameEnd;
+    /** index into RAW_TEXT_ELEMENTS, properly set in RAW_TEXT states only */
+    private int rawText;
 
     /** The currentTag buffer. */
     protected StringBuilder tagBuffer = new StringBuilder(100);
@@ -65,10 +76,29 @@ public class HtmlProcessor extends AbstractProcessor {
     /** The relevant attributes in the current currentTag, in order. */
     protected List<HtmlAttributeValue> attributes = new ArrayList<>();
 
+    /** to write parts of the tagBuffer without creating Strings */
+    private char[] writeBuffer = new char[100];
+
     private HtmlTag[] knownTags;
     private HtmlAttribute[] knownAttributes;
     private UrlRewriteMatcher[] urlRewriteMatchers;
 
+    private final NameTable tagNames;
+    private final NameTable attributeNames;
+    /** indexes of known attributes without name */
+    private final int[] otherAttributes;
+    /** candidate matchers, indexed by tag index and attribute index */
+    private final UrlRewriteMatcher[][][] dispatch;
+    /** passed to matchers; reused for all tags */
+    private final HtmlElement element;
+    /** for style attributes; null until needed */
+    private CssProcessor styleProcessor;
+
+    /** null if head assets are not reported */
+    private BiConsumer<String, String> headListener;
+    /** false after a body or /head tag */
+    private boolean inHead = true;
+
 
     /**
      * An enum to track the state of this processor.
@@ -92,17 +122,24 @@ public class HtmlProcessor extends AbstractProcessor {
         VALUE_START_SQ,
         VALUE_START_DQ,
         VALUE_START_UQ,
-        VALUE
+        VALUE,
+
+        // content of RAW_TEXT_ELEMENTS
+        RAW_TEXT,
+        /** tagBuffer holds a '<' followed by chars that match the close tag so far */
+        RAW_TEXT_END
     }
 
     static final class HtmlAttributeValue {
         private final HtmlAttribute attr;
+        private final int index;
         private final int start;
         private final int end;
         private final StringBuilder tagBuffer;
 
-        private HtmlAttributeValue(HtmlAttribute attr, int start, int end, StringBuilder tagBuffer) {
+        private HtmlAttributeValue(HtmlAttribute attr, int index, int start, int end, StringBuilder tagBuffer) {
             this.attr = attr;
+            this.index = index;
             this.start = start;
             this.end = end;
             this.tagBuffer = tagBuffer;
@@ -130,19 +167,148 @@ public class HtmlProcessor extends AbstractProcessor {
      */
     public HtmlProcessor(HtmlTag[] knownTags, HtmlAttribute[] knownAttributes, UrlRewriteMatcher[] urlRewriteMatchers) {
         super(LOG);
+        List<Integer> others;
+        List<UrlRewriteMatcher> candidates;
+        HtmlTag tag;
+        String name;
+
         this.knownTags = knownTags;
         this.knownAttributes = knownAttributes;
         this.urlRewriteMatchers = urlRewriteMatchers;
+        this.tagNames = new NameTable(knownTags.length);
+        for (int t = 0; t < knownTags.length; t++) {
+            tagNames.put(knownTags[t].getName(), t);
+        }
+        this.attributeNames = new NameTable(knownAttributes.length);
+        others = new ArrayList<>();
+        for (int a = 0; a < knownAttributes.length; a++) {
+            name = knownAttributes[a].getName();
+            if (name == null) {
+                others.add(a);
+            } else {
+                attributeNames.put(name.toLowerCase(), a);
+            }
+        }
+        this.otherAttributes = new int[others.size()];
+        for (int i = 0; i < otherAttributes.length; i++) {
+            otherAttributes[i] = others.get(i);
+        }
+        this.dispatch = new UrlRewriteMatcher[knownTags.length + 1][knownAttributes.length][];
+        for (int t = 0; t <= knownTags.length; t++) {
+            tag = t < knownTags.length ? knownTags[t] : OTHER_HTML_TAG;
+            for (int a = 0; a < knownAttributes.length; a++) {
+                candidates = new ArrayList<>();
+                for (UrlRewriteMatcher matcher : urlRewriteMatchers) {
+                    if (matcher.getAttributeToRewrite() == knownAttributes[a] && (matcher.getTag() == null || matcher.getTag() == tag)) {
+                        candidates.add(matcher);
+                    }
+                }
+                dispatch[t][a] = candidates.toArray(new UrlRewriteMatcher[0]);
+            }
+        }
+        this.currentTag = OTHER_HTML_TAG;
+        this.currentTagIndex = knownTags.length;
+        this.currentAttribute = OTHER_HTML_ATTRIBUTE;
+        this.currentAttributeIndex = -1;
+        this.element = new HtmlElement(OTHER_HTML_TAG, attributes);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        state = State.NULL;
+        tagNameEnd = 0;
+        rawText = -1;
+        currentTag = OTHER_HTML_TAG;
+        currentTagIndex = knownTags.length;
+        currentAttribute = OTHER_HTML_ATTRIBUTE;
+        currentAttributeIndex = -1;
+        attributeValueStartIndex = -1;
+        attributeNameStartIndex = -1;
+        tagBuffer = retain(tagBuffer, 100);
+        attributes.clear();
+        if (writeBuffer.length > MAX_RETAINED) {
+            writeBuffer = new char[100];
+        }
+        if (styleProcessor != null) {
+            styleProcessor.reset();
+        }
+        headListener = null;
+        inHead = true;
+    }
+
+    /**
+     * Reports stylesheets and scripts in the document head that are rewritten, e.g. to send preload hints for later requests.
+     * @param listener receives the rewritten url and the preload destination, i.e. "style" or "script"
+     */
+    public void setHeadListener(BiConsumer<String, String> listener) {
+        this.headListener = listener;
     }
 
     @Override
     public void flush() throws IOException {
-        if (tagBuffer.length() > 0) {
+        if (tagBuffer.length() > 0 && state != State.RAW_TEXT_END) {
             out.write(tagBuffer.toString());
         }
         super.flush();
     }
 
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            // already closed and reset
+            return;
+        }
+        if ((state == State.RAW_TEXT || state == State.RAW_TEXT_END) && rawText == RAW_TEXT_STYLE
+                && styleProcessor.uriBuffer.length() > 0) {
+            // document ends within an unterminated url(
+            out.write(styleProcessor.uriBuffer.toString());
+            styleProcessor.uriBuffer.setLength(0);
+        }
+        if (state == State.RAW_TEXT_END) {
+            // document ends within a potential close tag
+            out.write(tagBuffer.toString());
+            tagBuffer.setLength(0);
+        }
+        if (styleProcessor != null) {
+            countRewrites(styleProcessor);
+        }
+        super.close();
+    }
+
+    /** Copies raw text (except style content) up to the next '&lt;' in one go. */
+    @Override
+    protected int skip(CharSequence chars, int pos, int end) throws IOException {
+        int i;
+
+        if (state != State.RAW_TEXT || rawText == RAW_TEXT_STYLE) {
+            return pos;
+        }
+        i = pos;
+        while (i < end && chars.charAt(i) != '<') {
+            i++;
+        }
+        if (i > pos) {
+            writeChars(chars, pos, i);
+        }
+        return i;
+    }
+
+    private void writeChars(CharSequence chars, int start, int end) throws IOException {
+        CharBuffer buffer;
+
+        if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+            buffer = (CharBuffer) chars;
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position() + start, end - start);
+        } else if (chars instanceof String) {
+            out.write((String) chars, start, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                out.write(chars.charAt(i));
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -187,6 +353,12 @@ public class HtmlProcessor extends AbstractProcessor {
             case VALUE_START_UQ:
                 matchUnquotedValue(c);
                 break;
+            case RAW_TEXT:
+                matchRawText(c);
+                break;
+            case RAW_TEXT_END:
+                matchRawTextEnd(c);
+                break;
 
             default:
                 throw new IllegalStateException("Unexpected state: " + state);
@@ -280,13 +452,12 @@ public class HtmlProcessor extends AbstractProcessor {
     private void matchTag(char c) throws IOException {
         if (Character.isSpaceChar(c)) {
             state = State.TAG;
-            currentTag = findTagByName(tagBuffer.toString().toLowerCase());
+            tagNameEnd = tagBuffer.length();
+            findTag(0, tagNameEnd);
             tagBuffer.append(c);
         } else if (c == '>') {
-            processTagBuffer();
-            state = State.NULL;
-            tagBuffer.setLength(0);
-            out.write(c);
+            tagNameEnd = tagBuffer.length();
+            endTag();
         } else if (c == '!') {
             // comment
             state = State.SPECIAL_START;
@@ -299,10 +470,7 @@ public class HtmlProcessor extends AbstractProcessor {
 
     private void matchInTag(char c) throws IOException {
         if (c == '>') {
-            processTagBuffer();
-            state = State.NULL;
-            tagBuffer.setLength(0);
-            out.write(c);
+            endTag();
         } else if (c == '/') {
             // ignore this
             tagBuffer.append(c);
@@ -315,13 +483,108 @@ public class HtmlProcessor extends AbstractProcessor {
         }
     }
 
+    private void endTag() throws IOException {
+        int raw;
+
+        raw = selfClosing() ? -1 : RAW_TEXT_NAMES.get(tagBuffer, 0, tagNameEnd);
+        if (inHead && headListener != null && (isTagName("body") || isTagName("/head"))) {
+            inHead = false;
+        }
+        processTagBuffer();
+        tagBuffer.setLength(0);
+        out.write('>');
+        if (raw == -1) {
+            state = State.NULL;
+        } else {
+            rawText = raw;
+            state = State.RAW_TEXT;
+            if (raw == RAW_TEXT_STYLE) {
+                initStyleProcessor();
+            }
+        }
+    }
+
+    private boolean isTagName(String name) {
+        return tagNameEnd == name.length() && NameTable.startsWith(tagBuffer, 0, tagNameEnd, name, true);
+    }
+
+    /** xhtml style &lt;script ... /&gt; has no content */
+    private boolean selfClosing() {
+        char c;
+
+        for (int i = tagBuffer.length() - 1; i >= tagNameEnd; i--) {
+            c = tagBuffer.charAt(i);
+            if (c == '/') {
+                return true;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void matchRawText(char c) throws IOException {
+        if (c == '<') {
+            state = State.RAW_TEXT_END;
+            tagBuffer.append(c);
+        } else {
+            rawText(c);
+        }
+    }
+
+    private void rawText(char c) throws IOException {
+        if (rawText == RAW_TEXT_STYLE) {
+            styleProcessor.process(c);
+        } else {
+            out.write(c);
+        }
+    }
+
+    private void matchRawTextEnd(char c) throws IOException {
+        String name;
+        int matched;
+
+        name = RAW_TEXT_ELEMENTS[rawText];
+        // chars matched after "</"
+        matched = tagBuffer.length() - 2;
+        if (matched == -1) {
+            if (c == '/') {
+                tagBuffer.append(c);
+                return;
+            }
+        } else if (matched < name.length()) {
+            if (NameTable.lower(c) == name.charAt(matched)) {
+                tagBuffer.append(c);
+                return;
+            }
+        } else if (c <= ' ' || c == '/' || c == '>') {
+            // close tag: continue with normal tag processing, as if the '<' was just seen
+            if (rawText == RAW_TEXT_STYLE && styleProcessor.uriBuffer.length() > 0) {
+                // unterminated url(
+                out.write(styleProcessor.uriBuffer.toString());
+                styleProcessor.uriBuffer.setLength(0);
+            }
+            out.write('<');
+            tagBuffer.deleteCharAt(0);
+            state = State.TAG_START;
+            matchTag(c);
+            return;
+        }
+        // not the close tag
+        for (int i = 0, max = tagBuffer.length(); i < max; i++) {
+            rawText(tagBuffer.charAt(i));
+        }
+        tagBuffer.setLength(0);
+        state = State.RAW_TEXT;
+        matchRawText(c);
+    }
+
     private void matchAttribute(char c) throws IOException {
         if (c == '=' || Character.isSpaceChar(c)) {
             state = State.ATTRIBUTE;
 
             // match the attribute
-            String attributeName = tagBuffer.substring(attributeNameStartIndex);
-            currentAttribute = findMatchingAttribute(attributeName);
+            findAttribute(attributeNameStartIndex, tagBuffer.length());
 
             attributeNameStartIndex = -1;
 
@@ -405,28 +668,32 @@ public class HtmlProcessor extends AbstractProcessor {
     private void processTagBuffer() throws IOException {
         int index = 0;
         for (HtmlAttributeValue attributeValue : attributes) {
-            out.write(tagBuffer.substring(index, attributeValue.start));
+            writeTagBuffer(index, attributeValue.start);
 
             if (attributeValue.attr == LavenderHtmlAttribute.STYLE) {
                 rewriteCss(attributeValue);
             } else {
-                UrlRewriteMatcher matcher = lookupRewriteMatcher(currentTag, attributeValue.attr, attributes);
+                UrlRewriteMatcher matcher = lookupRewriteMatcher(attributeValue.index);
                 String value;
 
-                value = attributeValue.getValue();
-                if (matcher != null && attributeValue.attr == LavenderHtmlAttribute.SRCSET) {
-                    rewriteSrcSet(attributeValue.getValue());
-                } else if (matcher != null && !matcher.ignoreValue(value)) {
-                    matchesRewriteUrl(value);
+                if (matcher == null) {
+                    writeTagBuffer(attributeValue.start, attributeValue.end);
+                } else if (attributeValue.attr == LavenderHtmlAttribute.SRCSET) {
+                    rewriteSrcSet(attributeValue.start, attributeValue.end);
                 } else {
-                    out.write(value);
+                    value = attributeValue.getValue();
+                    if (!matcher.ignoreValue(value)) {
+                        matchesRewriteUrl(value, matcher);
+                    } else {
+                        out.write(value);
+                    }
                 }
             }
 
             index = attributeValue.end;
         }
 
-        out.write(tagBuffer.substring(index));
+        writeTagBuffer(index, tagBuffer.length());
 
         attributeNameStartIndex = -1;
         attributes.clear();
@@ -434,36 +701,107 @@ public class HtmlProcessor extends AbstractProcessor {
         uriBuffer.setLength(0);
     }
 
-    private void matchesRewriteUrl(String attributeValue) throws IOException {
-        String str = rewriteEngine.rewrite(attributeValue, baseURI, contextPath);
+    private void writeTagBuffer(int start, int end) throws IOException {
+        int length;
+
+        length = end - start;
+        if (length > writeBuffer.length) {
+            writeBuffer = new char[Math.max(length, writeBuffer.length * 2)];
+        }
+        tagBuffer.getChars(start, end, writeBuffer, 0);
+        out.write(writeBuffer, 0, length);
+    }
+
+    private void matchesRewriteUrl(String attributeValue, UrlRewriteMatcher matcher) throws IOException {
+        String str = rewrite(attributeValue);
         out.write(str);
+        if (headListener != null && inHead && !str.equals(attributeValue)) {
+            if (matcher == LavenderUrlRewriteMatcher.SCRIPT_MATCHER) {
+                headListener.accept(str, "script");
+            } else if (matcher == LavenderUrlRewriteMatcher.LINK_MATCHER && "stylesheet".equals(element.getAttribute(LavenderHtmlAttribute.REL))) {
+                headListener.accept(str, "style");
+            }
+        }
     }
 
     private void rewriteCss(HtmlAttributeValue htmlAttributeValue) throws IOException {
-        CssProcessor cssProcessor = new CssProcessor();
-        cssProcessor.setRewriteEngine(rewriteEngine, baseURI, contextPath);
-        cssProcessor.setWriter(out);
-        cssProcessor.process(tagBuffer, htmlAttributeValue.start, htmlAttributeValue.end - htmlAttributeValue.start);
-    }
-
-    private void rewriteSrcSet(String attributeValue) throws IOException {
-        Matcher elements = SRCSET_PATTERN.matcher(attributeValue);
-        StringBuffer replacement = new StringBuffer();
-        while (elements.find()) {
-            String url = elements.group(2);
-            if (!url.startsWith("data:")) {
-                url = rewriteEngine.rewrite(url, baseURI, contextPath);
+        initStyleProcessor();
+        styleProcessor.process(tagBuffer, htmlAttributeValue.start, htmlAttributeValue.end - htmlAttributeValue.start);
+    }
+
+    /** for style attributes and style elements */
+    private void initStyleProcessor() {
+        if (styleProcessor == null) {
+            styleProcessor = new CssProcessor();
+        } else {
+            countRewrites(styleProcessor);
+            styleProcessor.reset();
+        }
+        styleProcessor.setRewriteEngine(rewriteEngine, baseURI, contextPath);
+        styleProcessor.setWriter(out);
+    }
+
+    /**
+     * Rewrites the image candidate urls of a srcset value in tagBuffer[start, end) according to
+     * https://html.spec.whatwg.org/multipage/images.html#parsing-a-srcset-attribute. Everything except the urls is copied
+     * unchanged, data urls are not rewritten.
+     */
+    private void rewriteSrcSet(int start, int end) throws IOException {
+        int pos;
+        int written;
+        int urlStart;
+        int urlEnd;
+        boolean inParens;
+        char c;
+
+        pos = start;
+        written = start;
+        while (true) {
+            // splitting characters
+            while (pos < end && (isSrcsetSpace(c = tagBuffer.charAt(pos)) || c == ',')) {
+                pos++;
+            }
+            if (pos == end) {
+                break;
+            }
+            urlStart = pos;
+            while (pos < end && !isSrcsetSpace(tagBuffer.charAt(pos))) {
+                pos++;
+            }
+            urlEnd = pos;
+            while (tagBuffer.charAt(urlEnd - 1) == ',') {
+                // trailing commas separate candidates; there's at least one non-comma char
+                urlEnd--;
+            }
+            if (!NameTable.startsWith(tagBuffer, urlStart, urlEnd, "data:", false)) {
+                writeTagBuffer(written, urlStart);
+                out.write(rewrite(tagBuffer.substring(urlStart, urlEnd)));
+                written = urlEnd;
+            }
+            if (urlEnd < pos) {
+                // no descriptors
+                continue;
+            }
+            // descriptors: up to the next comma outside of parentheses
+            inParens = false;
+            while (pos < end) {
+                c = tagBuffer.charAt(pos);
+                if (c == '(') {
+                    inParens = true;
+                } else if (c == ')') {
+                    inParens = false;
+                } else if (c == ',' && !inParens) {
+                    break;
+                }
+                pos++;
             }
-            elements.appendReplacement(replacement, new StringBuilder()
-                    .append(elements.group(1))
-                    .append(url)
-                    .append(elements.group(3))
-                    .append(elements.group(4))
-                    .append(elements.group(5))
-                    .toString());
         }
-        elements.appendTail(replacement);
-        out.write(replacement.toString());
+        writeTagBuffer(written, end);
+    }
+
+    /** ASCII whitespace as defined by https://infra.spec.whatwg.org/#ascii-whitespace */
+    private static boolean isSrcsetSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
     }
 
     private void markValueStart() {
@@ -475,36 +813,58 @@ public class HtmlProcessor extends AbstractProcessor {
     private void markValueLength() {
         int attributeEndInTagBuffer = tagBuffer.length();
         if (currentAttribute != OTHER_HTML_ATTRIBUTE) {
-            attributes.add(new HtmlAttributeValue(currentAttribute, attributeValueStartIndex, attributeEndInTagBuffer,
+            attributes.add(new HtmlAttributeValue(currentAttribute, currentAttributeIndex, attributeValueStartIndex, attributeEndInTagBuffer,
                     tagBuffer));
             attributeValueStartIndex = -1;
         }
     }
 
-    private HtmlTag findTagByName(String name) {
-        for (HtmlTag tag : knownTags) {
-            if (name.equals(tag.getName())) {
-                return tag;
-            }
-        }
+    /** sets currentTag to the tag with the name in tagBuffer[start, end) */
+    private void findTag(int start, int end) {
+        int index;
 
-        return OTHER_HTML_TAG;
+        index = tagNames.get(tagBuffer, start, end);
+        if (index == -1) {
+            currentTag = OTHER_HTML_TAG;
+            currentTagIndex = knownTags.length;
+        } else {
+            currentTag = knownTags[index];
+            currentTagIndex = index;
+        }
     }
 
-    private HtmlAttribute findMatchingAttribute(String name) {
-        for (HtmlAttribute attribute : knownAttributes) {
-            if (attribute.attributeMatches(name)) {
-                return attribute;
+    /** sets currentAttribute to the attribute with the name in tagBuffer[start, end); named attributes are checked first */
+    private void findAttribute(int start, int end) {
+        int index;
+
+        index = attributeNames.get(tagBuffer, start, end);
+        if (index == -1) {
+            for (int other : otherAttributes) {
+                if (knownAttributes[other].attributeMatches(tagBuffer, start, end)) {
+                    index = other;
+                    break;
+                }
             }
         }
-        return OTHER_HTML_ATTRIBUTE;
+        if (index == -1) {
+            currentAttribute = OTHER_HTML_ATTRIBUTE;
+            currentAttributeIndex = -1;
+        } else {
+            currentAttribute = knownAttributes[index];
+            currentAttributeIndex = index;
+        }
     }
 
-    private UrlRewriteMatcher lookupRewriteMatcher(HtmlTag tag, HtmlAttribute attribute, List<HtmlAttributeValue> attributeValues) {
-        HtmlElement htmlElement = new HtmlElement(tag, attributeValues);
+    private UrlRewriteMatcher lookupRewriteMatcher(int attributeIndex) {
+        UrlRewriteMatcher[] candidates;
 
-        for (UrlRewriteMatcher urlRewriteMatcher : urlRewriteMatchers) {
-            if (attribute == urlRewriteMatcher.getAttributeToRewrite() && urlRewriteMatcher.matches(htmlElement)) {
+        candidates = dispatch[currentTagIndex][attributeIndex];
+        if (candidates.length == 0) {
+            return null;
+        }
+        element.setTag(currentTag);
+        for (UrlRewriteMatcher urlRewriteMatcher : candidates) {
+            if (urlRewriteMatcher.matches(element)) {
                 return urlRewriteMatcher;
             }
         }
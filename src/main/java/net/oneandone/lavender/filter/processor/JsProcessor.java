@@ -0,0 +1,389 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * {@link Processor} for JavaScript content. Rewrites string literals passed to the marker function
+ * (<code>lavender("/img/x.png")</code>, the application defines <code>lavender</code> as the identity function) and
+ * string literals that look like absolute paths (plain ascii starting with a slash, without whitespace or escapes) - the latter
+ * remain unchanged unless they're found in the index. Relative paths are resolved against the url of the script, not the page
+ * that uses it, so they are rewritten only when passed to the marker function. Comments, regular expression literals and template literals are copied without rewriting.
+ *
+ * Regular expressions are told from divisions by the preceding token, like JavaScript minifiers do. Everything is written
+ * through as it is scanned, only the current string literal is buffered, so misclassified input never gets lost.
+ */
+public class JsProcessor extends AbstractProcessor {
+    static final Logger LOG = LoggerFactory.getLogger(JsProcessor.class);
+
+    public static final String MARKER = "lavender";
+
+    /** string literals longer than this are not rewritten */
+    private static final int MAX_LITERAL = 1024;
+
+    /** after these keywords, a slash starts a regular expression */
+    private static final String[] REGEX_KEYWORDS = { "return", "typeof", "instanceof", "in", "of", "new", "delete", "void", "throw",
+            "case", "do", "else", "yield", "await" };
+
+    enum State {
+        CODE, SLASH, LINE_COMMENT, BLOCK_COMMENT, BLOCK_COMMENT_STAR, STRING, STRING_ESCAPE,
+        TEMPLATE, TEMPLATE_ESCAPE, TEMPLATE_DOLLAR, REGEX, REGEX_ESCAPE, REGEX_CLASS, REGEX_CLASS_ESCAPE
+    }
+
+    private State state;
+
+    /** prev after increment and decrement operators; not a JavaScript char */
+    private static final char INCREMENT = 1;
+
+    /** last significant char in code; 'a' for identifiers, numbers and literals; INCREMENT for ++ and --; 0 at the beginning */
+    private char prev;
+    /** the identifier that ends with prev */
+    private StringBuilder word;
+    /** true after "lavender(" */
+    private boolean markerCall;
+
+    /** quote of the current string literal */
+    private char quote;
+    /** current string literal is an argument of the marker function */
+    private boolean marker;
+    /** current string literal is not rewritten because it's too long, contains escapes or was flushed */
+    private boolean plain;
+
+    /** brace depth in code */
+    private int braces;
+    /** brace depths of enclosing template literals */
+    private int[] templates;
+    private int templateCount;
+
+    public JsProcessor() {
+        super(LOG);
+        word = new StringBuilder();
+        templates = new int[4];
+        init();
+    }
+
+    private void init() {
+        state = State.CODE;
+        prev = 0;
+        word.setLength(0);
+        markerCall = false;
+        quote = 0;
+        marker = false;
+        plain = false;
+        braces = 0;
+        templateCount = 0;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        word = retain(word, 16);
+        init();
+    }
+
+    @Override
+    protected void process(char c) throws IOException {
+        switch (state) {
+            case CODE:
+                code(c);
+                break;
+            case SLASH:
+                if (c == '/') {
+                    out.write(c);
+                    state = State.LINE_COMMENT;
+                } else if (c == '*') {
+                    out.write(c);
+                    state = State.BLOCK_COMMENT;
+                } else if (regexAllowed()) {
+                    state = State.REGEX;
+                    regex(c, false);
+                } else {
+                    prev = '/';
+                    state = State.CODE;
+                    code(c);
+                }
+                break;
+            case LINE_COMMENT:
+                out.write(c);
+                if (c == '\n' || c == '\r') {
+                    state = State.CODE;
+                }
+                break;
+            case BLOCK_COMMENT:
+                out.write(c);
+                if (c == '*') {
+                    state = State.BLOCK_COMMENT_STAR;
+                }
+                break;
+            case BLOCK_COMMENT_STAR:
+                out.write(c);
+                if (c == '/') {
+                    state = State.CODE;
+                } else if (c != '*') {
+                    state = State.BLOCK_COMMENT;
+                }
+                break;
+            case STRING:
+                string(c);
+                break;
+            case STRING_ESCAPE:
+                literal(c);
+                state = State.STRING;
+                break;
+            case TEMPLATE:
+                template(c);
+                break;
+            case TEMPLATE_ESCAPE:
+                out.write(c);
+                state = State.TEMPLATE;
+                break;
+            case TEMPLATE_DOLLAR:
+                if (c == '{') {
+                    out.write(c);
+                    pushTemplate();
+                    braces++;
+                    prev = '{';
+                    state = State.CODE;
+                } else {
+                    state = State.TEMPLATE;
+                    template(c);
+                }
+                break;
+            case REGEX:
+                regex(c, false);
+                break;
+            case REGEX_ESCAPE:
+                out.write(c);
+                state = State.REGEX;
+                break;
+            case REGEX_CLASS:
+                regex(c, true);
+                break;
+            case REGEX_CLASS_ESCAPE:
+                out.write(c);
+                state = State.REGEX_CLASS;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state: " + state);
+        }
+    }
+
+    private void code(char c) throws IOException {
+        if (isIdentifier(c)) {
+            if (prev != 'a') {
+                word.setLength(0);
+            }
+            word.append(c);
+            prev = 'a';
+            out.write(c);
+            return;
+        }
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            if (prev == 'a') {
+                prev = ' '; // word ends, but remember it
+            }
+            out.write(c);
+            return;
+        }
+        if (prev == ' ') {
+            prev = 'a';
+        }
+        out.write(c);
+        switch (c) {
+            case '/':
+                state = State.SLASH;
+                break;
+            case '"':
+            case '\'':
+                startString(c);
+                break;
+            case '`':
+                state = State.TEMPLATE;
+                markerCall = false;
+                break;
+            case '(':
+                markerCall = prev == 'a' && MARKER.contentEquals(word);
+                prev = c;
+                break;
+            case '{':
+                braces++;
+                prev = c;
+                markerCall = false;
+                break;
+            case '}':
+                braces--;
+                markerCall = false;
+                if (templateCount > 0 && templates[templateCount - 1] == braces) {
+                    templateCount--;
+                    state = State.TEMPLATE;
+                } else {
+                    prev = c;
+                }
+                break;
+            case '+':
+            case '-':
+                markerCall = false;
+                prev = prev == c ? INCREMENT : c;
+                break;
+            default:
+                markerCall = false;
+                prev = c;
+                break;
+        }
+    }
+
+    private boolean regexAllowed() {
+        switch (prev) {
+            case 'a':
+                for (String keyword : REGEX_KEYWORDS) {
+                    if (keyword.contentEquals(word)) {
+                        return true;
+                    }
+                }
+                return false;
+            case ')':
+            case ']':
+                return false;
+            case INCREMENT:
+                // postfix; a regular expression after a prefix operator makes no sense
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private void regex(char c, boolean inClass) throws IOException {
+        out.write(c);
+        switch (c) {
+            case '\\':
+                state = inClass ? State.REGEX_CLASS_ESCAPE : State.REGEX_ESCAPE;
+                break;
+            case '[':
+                state = State.REGEX_CLASS;
+                break;
+            case ']':
+                state = State.REGEX;
+                break;
+            case '/':
+                if (!inClass) {
+                    endLiteral();
+                }
+                break;
+            case '\n':
+            case '\r':
+                // not a regex after all
+                state = State.CODE;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void template(char c) throws IOException {
+        out.write(c);
+        if (c == '\\') {
+            state = State.TEMPLATE_ESCAPE;
+        } else if (c == '$') {
+            state = State.TEMPLATE_DOLLAR;
+        } else if (c == '`') {
+            endLiteral();
+        }
+    }
+
+    private void pushTemplate() {
+        if (templateCount == templates.length) {
+            templates = Arrays.copyOf(templates, templateCount * 2);
+        }
+        templates[templateCount++] = braces;
+    }
+
+    //-- string literals
+
+    private void startString(char c) {
+        quote = c;
+        marker = markerCall && prev == '(';
+        markerCall = false;
+        plain = false;
+        uriBuffer.setLength(0);
+        state = State.STRING;
+    }
+
+    private void string(char c) throws IOException {
+        String literal;
+
+        if (c == quote) {
+            literal = uriBuffer.toString();
+            out.write(!plain && !literal.isEmpty() && (marker || isPath(literal)) ? rewrite(literal) : literal);
+            uriBuffer.setLength(0);
+            out.write(c);
+            endLiteral();
+        } else if (c == '\n' || c == '\r') {
+            // unterminated
+            out.write(uriBuffer.toString());
+            uriBuffer.setLength(0);
+            out.write(c);
+            state = State.CODE;
+        } else {
+            if (c == '\\') {
+                plain = true;
+                state = State.STRING_ESCAPE;
+            }
+            literal(c);
+        }
+    }
+
+    private void literal(char c) throws IOException {
+        if (plain && uriBuffer.length() == 0) {
+            out.write(c);
+        } else {
+            uriBuffer.append(c);
+            if (uriBuffer.length() > MAX_LITERAL || plain) {
+                plain = true;
+                out.write(uriBuffer.toString());
+                uriBuffer.setLength(0);
+            }
+        }
+    }
+
+    private void endLiteral() {
+        prev = 'a';
+        word.setLength(0);
+        state = State.CODE;
+    }
+
+    /** @return true for absolute plain paths that might be in the index */
+    private static boolean isPath(String str) {
+        return str.charAt(0) == '/' && UriHelper.plainPathEnd(str) != -1;
+    }
+
+    private static boolean isIdentifier(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$' || c >= 128;
+    }
+
+    /** a string literal flushed in the middle is not rewritten */
+    @Override
+    public void flush() throws IOException {
+        if (uriBuffer.length() > 0) {
+            plain = true;
+        }
+        super.flush();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link Processor} for JSON content. Rewrites string values of the configured keys (including strings in arrays under these
+ * keys) or, without keys, all string values that are plain paths - the latter remain unchanged unless they're found in the index.
+ * Everything else is written through unchanged, only the current string is buffered. Strings with escapes other than "\/" are
+ * not rewritten.
+ */
+public class JsonProcessor extends AbstractProcessor {
+    static final Logger LOG = LoggerFactory.getLogger(JsonProcessor.class);
+
+    /** strings longer than this are not rewritten */
+    private static final int MAX_STRING = 2048;
+
+    enum State {
+        OTHER, STRING, ESCAPE
+    }
+
+    /** empty to rewrite all values that are plain paths */
+    private final List<String> keys;
+
+    private State state;
+
+    /** '{' or '[' for the enclosing objects and arrays */
+    private char[] containers;
+    /** for arrays: if strings are rewritten; unused for objects */
+    private boolean[] matched;
+    private int depth;
+
+    /** in an object: next string is a key */
+    private boolean expectKey;
+    /** the last key of the current object is one of the configured keys */
+    private boolean keyMatched;
+
+    /** the current string is a key */
+    private boolean key;
+    /** the current string contains "\/" */
+    private boolean slashEscapes;
+    /** the current string is not rewritten because it's too long, has other escapes or was flushed */
+    private boolean plain;
+
+    public JsonProcessor(List<String> keys) {
+        super(LOG);
+        this.keys = keys;
+        this.containers = new char[16];
+        this.matched = new boolean[16];
+        init();
+    }
+
+    private void init() {
+        state = State.OTHER;
+        depth = 0;
+        expectKey = false;
+        keyMatched = false;
+        key = false;
+        slashEscapes = false;
+        plain = false;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        init();
+    }
+
+    @Override
+    protected void process(char c) throws IOException {
+        switch (state) {
+            case OTHER:
+                other(c);
+                break;
+            case STRING:
+                if (c == '"') {
+                    endString();
+                } else if (c == '\\') {
+                    state = State.ESCAPE;
+                    append(c);
+                } else {
+                    append(c);
+                }
+                break;
+            case ESCAPE:
+                if (c == '/') {
+                    slashEscapes = true;
+                } else {
+                    plain = true;
+                }
+                append(c);
+                state = State.STRING;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state: " + state);
+        }
+    }
+
+    private void other(char c) throws IOException {
+        out.write(c);
+        switch (c) {
+            case '"':
+                key = depth > 0 && containers[depth - 1] == '{' && expectKey;
+                slashEscapes = false;
+                plain = false;
+                uriBuffer.setLength(0);
+                state = State.STRING;
+                break;
+            case '{':
+                push(c, false);
+                expectKey = true;
+                break;
+            case '[':
+                push(c, valueMatches());
+                break;
+            case '}':
+            case ']':
+                if (depth > 0) {
+                    depth--;
+                }
+                expectKey = false;
+                break;
+            case ':':
+                expectKey = false;
+                break;
+            case ',':
+                expectKey = depth > 0 && containers[depth - 1] == '{';
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void push(char c, boolean match) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            matched = Arrays.copyOf(matched, depth * 2);
+        }
+        containers[depth] = c;
+        matched[depth] = match;
+        depth++;
+    }
+
+    /** @return true if the value at the current position is rewritten because of its key */
+    private boolean valueMatches() {
+        if (depth == 0) {
+            return false;
+        }
+        return containers[depth - 1] == '{' ? keyMatched : matched[depth - 1];
+    }
+
+    private void append(char c) throws IOException {
+        if (plain && uriBuffer.length() == 0) {
+            out.write(c);
+        } else {
+            uriBuffer.append(c);
+            if (plain || uriBuffer.length() > MAX_STRING) {
+                plain = true;
+                out.write(uriBuffer.toString());
+                uriBuffer.setLength(0);
+            }
+        }
+    }
+
+    private void endString() throws IOException {
+        String raw;
+        String value;
+        String result;
+
+        raw = uriBuffer.toString();
+        uriBuffer.setLength(0);
+        if (key) {
+            keyMatched = !plain && keys.contains(raw);
+            out.write(raw);
+        } else if (!plain && !raw.isEmpty() && (keys.isEmpty() || valueMatches())) {
+            value = slashEscapes ? raw.replace("\\/", "/") : raw;
+            // rewrite strips quotes even if the value is not found
+            if (value.charAt(0) != '\'' && (keys.isEmpty() ? UriHelper.plainPathEnd(value) != -1 : isRewritable(value))) {
+                result = rewrite(value);
+                out.write(result.equals(value) ? raw : result);
+            } else {
+                out.write(raw);
+            }
+        } else {
+            out.write(raw);
+        }
+        out.write('"');
+        state = State.OTHER;
+    }
+
+    /** @return true if rewrite returns the value unchanged when it's not found in the index */
+    private static boolean isRewritable(String value) {
+        char c;
+
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= 128 || c <= ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** a string flushed in the middle is not rewritten */
+    @Override
+    public void flush() throws IOException {
+        if (uriBuffer.length() > 0) {
+            plain = true;
+        }
+        super.flush();
+    }
+}
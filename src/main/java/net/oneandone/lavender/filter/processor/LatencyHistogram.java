@@ -0,0 +1,110 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free histogram of durations in microseconds, with log-linear buckets like HdrHistogram: values below 16 are exact,
+ * larger values are recorded with 3 bits of precision (i.e. at most 12.5% off). Recording is a single atomic increment
+ * plus a max update; reading is not atomic across buckets, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** first exponent with sub buckets: 2^4 = LINEAR */
+    private static final int MIN_EXPONENT = 4;
+
+    static int bucket(long value) {
+        int exponent;
+
+        if (value < LINEAR) {
+            return value < 0 ? 0 : (int) value;
+        }
+        exponent = 63 - Long.numberOfLeadingZeros(value);
+        return LINEAR + (exponent - MIN_EXPONENT) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /** @return largest value recorded in the specified bucket */
+    static long highest(int bucket) {
+        int exponent;
+        int sub;
+
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        exponent = (bucket - LINEAR) / SUB_BUCKETS + MIN_EXPONENT;
+        sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    //--
+
+    private final AtomicLongArray counts;
+    private final LongAccumulator max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long micros) {
+        counts.incrementAndGet(bucket(micros));
+        max.accumulate(micros);
+    }
+
+    public long getCount() {
+        long result;
+
+        result = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /** @param percentile between 0 and 100; @return upper bound of the respective bucket, 0 if nothing was recorded */
+    public long getPercentile(double percentile) {
+        long total;
+        long limit;
+        long seen;
+
+        total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        limit = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= limit) {
+                return Math.min(highest(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "p50=" + getPercentile(50) + "us, p90=" + getPercentile(90) + "us, p99=" + getPercentile(99) + "us, max=" + getMax() + "us";
+    }
+}
@@ -15,7 +15,6 @@
  */
 package net.oneandone.lavender.filter.processor;
 
-import java.util.function.Predicate;
 /**
  * An enum to track the current attribute.
  */
@@ -33,20 +32,37 @@ public enum LavenderHtmlAttribute implements HtmlAttribute {
     DATA("data"),
 
     /** everything starting with "data-lavender-" */
-    DATA_LAVENDER_ATTR(x -> x.startsWith("data-lavender-"));
+    DATA_LAVENDER_ATTR("data-lavender-", true);
 
-    private Predicate<String> attributeMatch;
+    /** name or prefix */
+    private final String name;
+    private final boolean prefix;
 
-    LavenderHtmlAttribute(Predicate<String> attributeMatch) {
-        this.attributeMatch = attributeMatch;
+    LavenderHtmlAttribute(String name) {
+        this(name, false);
     }
 
-    LavenderHtmlAttribute(String attributeName) {
-        this.attributeMatch = x -> attributeName.equalsIgnoreCase(x);
+    LavenderHtmlAttribute(String name, boolean prefix) {
+        this.name = name;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public String getName() {
+        return prefix ? null : name;
     }
 
     @Override
     public boolean attributeMatches(String attributeName) {
-        return attributeMatch.test(attributeName);
+        return prefix ? attributeName.startsWith(name) : name.equalsIgnoreCase(attributeName);
+    }
+
+    @Override
+    public boolean attributeMatches(CharSequence chars, int start, int end) {
+        if (prefix) {
+            return NameTable.startsWith(chars, start, end, name, false);
+        } else {
+            return end - start == name.length() && NameTable.startsWith(chars, start, end, name, true);
+        }
     }
 }
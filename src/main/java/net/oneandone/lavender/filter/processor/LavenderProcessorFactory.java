@@ -19,31 +19,120 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Factory for two content types: text/html and text/css.
+ * Factory for text/html, text/css and - if system property "lavender.js" is true - JavaScript. JSON is processed if system
+ * property "lavender.json" is set: either to a comma-separated list of keys whose values are rewritten, or to "*" to rewrite
+ * all string values that are plain paths. Processors are pooled, the pool capacity per content type is configured with system
+ * property "lavender.processorPool", it defaults to twice the number of processors. 0 disables pooling.
  */
 public class LavenderProcessorFactory implements ProcessorFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(LavenderProcessorFactory.class);
 
+    public static final String POOL_PROPERTY = "lavender.processorPool";
+    public static final String JS_PROPERTY = "lavender.js";
+    public static final String JSON_PROPERTY = "lavender.json";
+
+    private static final List<String> JS_TYPES = Arrays.asList("text/javascript", "application/javascript", "application/x-javascript");
+
     protected final RewriteEngine rewriteEngine;
+    /** for HTTP/2 and later clients; same as rewriteEngine if there's no single origin */
+    protected final RewriteEngine multiplexedEngine;
+
+    private final ProcessorPool<HtmlProcessor> htmlPool;
+    private final ProcessorPool<CssProcessor> cssPool;
+    /** null if JavaScript is not processed */
+    private final ProcessorPool<JsProcessor> jsPool;
+    /** null if JSON is not processed */
+    private final ProcessorPool<JsonProcessor> jsonPool;
+    private final RewriteMetrics metrics;
+    private final RewriteMetrics.Counters htmlMetrics;
+    private final RewriteMetrics.Counters cssMetrics;
+    private final RewriteMetrics.Counters jsMetrics;
+    private final RewriteMetrics.Counters jsonMetrics;
 
     public LavenderProcessorFactory(RewriteEngine rewriteEngine) {
+        this(rewriteEngine, Integer.getInteger(POOL_PROPERTY, Runtime.getRuntime().availableProcessors() * 2), Boolean.getBoolean(JS_PROPERTY),
+                jsonKeys(System.getProperty(JSON_PROPERTY)));
+    }
+
+    /** @return null to disable JSON processing, an empty list to rewrite all plain paths */
+    public static List<String> jsonKeys(String property) {
+        List<String> result;
+
+        if (property == null || property.trim().isEmpty()) {
+            return null;
+        }
+        result = new ArrayList<>();
+        if (!"*".equals(property.trim())) {
+            for (String key : property.split(",")) {
+                key = key.trim();
+                if (!key.isEmpty()) {
+                    result.add(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    public LavenderProcessorFactory(RewriteEngine rewriteEngine, int poolCapacity) {
+        this(rewriteEngine, poolCapacity, false);
+    }
+
+    public LavenderProcessorFactory(RewriteEngine rewriteEngine, int poolCapacity, boolean js) {
+        this(rewriteEngine, poolCapacity, js, null);
+    }
+
+    /** @param jsonKeys null to disable JSON processing, empty to rewrite all string values that are plain paths */
+    public LavenderProcessorFactory(RewriteEngine rewriteEngine, int poolCapacity, boolean js, List<String> jsonKeys) {
         this.rewriteEngine = rewriteEngine;
+        this.multiplexedEngine = singleOrigin(rewriteEngine);
+        this.htmlPool = new ProcessorPool<>(HtmlProcessor::new, poolCapacity);
+        this.cssPool = new ProcessorPool<>(CssProcessor::new, poolCapacity);
+        this.jsPool = js ? new ProcessorPool<>(JsProcessor::new, poolCapacity) : null;
+        this.jsonPool = jsonKeys != null ? new ProcessorPool<>(() -> new JsonProcessor(jsonKeys), poolCapacity) : null;
+        this.metrics = new RewriteMetrics();
+        this.htmlMetrics = metrics.get("text/html");
+        this.cssMetrics = metrics.get("text/css");
+        this.jsMetrics = js ? metrics.get("text/javascript") : null;
+        this.jsonMetrics = jsonKeys != null ? metrics.get("application/json") : null;
         if (LOG.isInfoEnabled()) {
-            LOG.info("Created default processor factory");
+            LOG.info("Created default processor factory, pool capacity " + poolCapacity);
         }
     }
 
+    private static RewriteEngine singleOrigin(RewriteEngine rewriteEngine) {
+        RewriteEngine result;
+
+        result = rewriteEngine instanceof LavenderRewriteEngine ? ((LavenderRewriteEngine) rewriteEngine).singleOrigin() : null;
+        return result == null ? rewriteEngine : result;
+    }
+
     @Override
     public Processor createProcessor(String baseContentType, URI baseURI, String contextPath) {
-        Processor processor = null;
+        return createProcessor(baseContentType, baseURI, contextPath, false);
+    }
+
+    @Override
+    public Processor createProcessor(String baseContentType, URI baseURI, String contextPath, boolean multiplexed) {
+        AbstractProcessor processor = null;
 
         if ("text/html".equals(baseContentType)) {
-            processor = new HtmlProcessor();
+            processor = htmlPool.acquire();
+            processor.setMetrics(htmlMetrics);
         } else if ("text/css".equals(baseContentType)) {
-            processor = new CssProcessor();
+            processor = cssPool.acquire();
+            processor.setMetrics(cssMetrics);
+        } else if (jsPool != null && JS_TYPES.contains(baseContentType)) {
+            processor = jsPool.acquire();
+            processor.setMetrics(jsMetrics);
+        } else if (jsonPool != null && "application/json".equals(baseContentType)) {
+            processor = jsonPool.acquire();
+            processor.setMetrics(jsonMetrics);
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No processor created for content type '" + baseContentType + "'");
@@ -51,9 +140,40 @@ public class LavenderProcessorFactory implements ProcessorFactory {
         }
 
         if (processor != null) {
-            processor.setRewriteEngine(rewriteEngine, baseURI, contextPath);
+            processor.setRewriteEngine(multiplexed ? multiplexedEngine : rewriteEngine, baseURI, contextPath);
         }
 
         return processor;
     }
+
+    public ProcessorPool<HtmlProcessor> getHtmlPool() {
+        return htmlPool;
+    }
+
+    public ProcessorPool<CssProcessor> getCssPool() {
+        return cssPool;
+    }
+
+    /** @return null if JavaScript is not processed */
+    public ProcessorPool<JsProcessor> getJsPool() {
+        return jsPool;
+    }
+
+    /** @return null if JSON is not processed */
+    public ProcessorPool<JsonProcessor> getJsonPool() {
+        return jsonPool;
+    }
+
+    public RewriteEngine getRewriteEngine() {
+        return rewriteEngine;
+    }
+
+    /** @return true if HTTP/2 and later clients get a single origin */
+    public boolean hasSingleOrigin() {
+        return multiplexedEngine != rewriteEngine;
+    }
+
+    public RewriteMetrics getMetrics() {
+        return metrics;
+    }
 }
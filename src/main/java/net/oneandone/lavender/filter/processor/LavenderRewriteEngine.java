@@ -40,6 +40,10 @@ import static net.oneandone.lavender.filter.processor.UriHelper.resolvePathWitho
 public class LavenderRewriteEngine implements RewriteEngine {
     private static final Logger LOG = LoggerFactory.getLogger(LavenderRewriteEngine.class);
 
+    public static final String LOAD_FACTOR_PROPERTY = "lavender.nodes.loadFactor";
+    private static final String WEIGHT = "weight=";
+    private static final String SINGLE = "single";
+
     //--
 
     public static RewriteEngine load(Index index, Node nodesFiles) throws IOException {
@@ -54,12 +58,24 @@ public class LavenderRewriteEngine implements RewriteEngine {
         }
     }
 
+    /**
+     * Each line of the nodes file is a node url, optionally followed by a weight, e.g. "http://cdn1.example/ weight=3";
+     * the weight of http nodes multiplies their replicas in the consistent hash, https nodes get the weight of the http node
+     * with the same host. Option "single" marks the node that serves
+     * all assets for HTTP/2 and later clients, see singleOrigin(); this node is not sharded. System property "lavender.nodes.loadFactor"
+     * bounds the share of the key space of any node to this factor times its fair share; 0 (the default) for no bound.
+     */
     public static RewriteEngine load(Index index, InputStream raw) throws IOException {
         LavenderRewriteEngine result;
         BufferedReader in;
         String line;
+        String[] fields;
+        String url;
+        int weight;
+        boolean weighted;
+        boolean single;
 
-        result = new LavenderRewriteEngine(index);
+        result = new LavenderRewriteEngine(index, Double.parseDouble(System.getProperty(LOAD_FACTOR_PROPERTY, "0")));
         in = new BufferedReader(new InputStreamReader(raw, Index.ENCODING));
         while (true) {
             line = in.readLine();
@@ -68,16 +84,53 @@ public class LavenderRewriteEngine implements RewriteEngine {
             }
             line = line.trim();
             if (!line.isEmpty()) {
-                if (!line.endsWith("/")) {
-                    line = line + "/";
+                fields = line.split("\\s+");
+                url = fields[0];
+                if (!url.endsWith("/")) {
+                    url = url + "/";
+                }
+                weight = 1;
+                weighted = false;
+                single = false;
+                for (int i = 1; i < fields.length; i++) {
+                    if (fields[i].startsWith(WEIGHT)) {
+                        weight = parseWeight(fields[i].substring(WEIGHT.length()), line);
+                        weighted = true;
+                    } else if (fields[i].equals(SINGLE)) {
+                        single = true;
+                    } else {
+                        throw new IOException("unknown node option: " + line);
+                    }
+                }
+                if (weighted && (single || !url.startsWith("http:"))) {
+                    throw new IOException("weight is supported for sharded http nodes only: " + line);
+                }
+                if (single) {
+                    // not sharded, so HTTP/1 clients get the same urls as without this line
+                    result.setSingleOrigin(URI.create(url));
+                } else {
+                    result.add(URI.create(url), weight);
                 }
-                result.add(URI.create(line));
             }
         }
         in.close();
         return result;
     }
 
+    private static int parseWeight(String str, String line) throws IOException {
+        int result;
+
+        try {
+            result = Integer.parseInt(str);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid weight: " + line);
+        }
+        if (result < 1) {
+            throw new IOException("invalid weight: " + line);
+        }
+        return result;
+    }
+
     //--
 
     protected final Index index;
@@ -91,21 +144,54 @@ public class LavenderRewriteEngine implements RewriteEngine {
     /** The consistent hash function. */
     protected final ConsistentHash consistentHash;
 
+    /** Rejects references that cannot be in the index; built once, the index must not be modified afterwards. */
+    protected final LookupFilter lookupFilter;
+
+    /** Scheme mapped to the node that serves all assets in single origin mode */
+    protected final Map<String, URI> singleNodes;
+
+    /** true to use singleNodes if there's one for the respective scheme */
+    private final boolean single;
+
     public LavenderRewriteEngine(Index index) {
+        this(index, 0);
+    }
+
+    /** @param loadFactor 0 for an unbounded consistent hash */
+    public LavenderRewriteEngine(Index index, double loadFactor) {
         this.index = index;
-        this.consistentHash = new ConsistentHash(200);
+        this.lookupFilter = new LookupFilter(index);
+        this.consistentHash = new ConsistentHash(200, loadFactor, new String[0]);
         this.httpNodes = new HashMap<>();
         this.httpsNodes = new HashMap<>();
+        this.singleNodes = new HashMap<>();
+        this.single = false;
+    }
+
+    /** single origin view on the specified engine */
+    private LavenderRewriteEngine(LavenderRewriteEngine sharded) {
+        this.index = sharded.index;
+        this.lookupFilter = sharded.lookupFilter;
+        this.consistentHash = sharded.consistentHash;
+        this.httpNodes = sharded.httpNodes;
+        this.httpsNodes = sharded.httpsNodes;
+        this.singleNodes = sharded.singleNodes;
+        this.single = true;
     }
 
     public void add(URI uri) {
+        add(uri, 1);
+    }
+
+    /** @param weight used for http nodes only; https nodes are picked by the host of the http node */
+    public void add(URI uri, int weight) {
         if (!uri.getPath().endsWith("/")) {
             throw new IllegalArgumentException(uri.toString());
         }
         switch (uri.getScheme()) {
             case "http":
                 httpNodes.put(uri.getHost(), uri);
-                consistentHash.addNode(uri.getHost());
+                consistentHash.addNode(uri.getHost(), weight);
                 break;
             case "https":
                 httpsNodes.put(uri.getHost(), uri);
@@ -115,25 +201,93 @@ public class LavenderRewriteEngine implements RewriteEngine {
         }
     }
 
+    /** Use the specified node for all assets of its scheme in single origin mode; the node is not added to the sharded nodes */
+    public void setSingleOrigin(URI uri) {
+        if (!uri.getPath().endsWith("/")) {
+            throw new IllegalArgumentException(uri.toString());
+        }
+        if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+            throw new IllegalArgumentException(uri + " has unsupported scheme, only http and https are supported.");
+        }
+        singleNodes.put(uri.getScheme(), uri);
+    }
+
+    /**
+     * Single origin mode for clients that multiplex requests over one connection (HTTP/2 and later): sharding across hosts
+     * only costs them additional connections and TLS handshakes. Schemes without single origin node remain sharded.
+     *
+     * @return engine sharing index and nodes with this engine, null if no single origin node is defined
+     */
+    public LavenderRewriteEngine singleOrigin() {
+        return singleNodes.isEmpty() ? null : new LavenderRewriteEngine(this);
+    }
+
     public String rewrite(String uri, URI baseURI, String contextPath) {
         URI reference;
+        URI rewritten;
         String result;
 
         uri = UriHelper.removeLeadingTrailingQuotes(uri);
-
+        if (lookupFilter.rejects(uri)) {
+            return uri;
+        }
+        result = rewritePlain(uri, baseURI, contextPath);
+        if (result != null) {
+            return result;
+        }
         try {
             reference = new URI(uri);
         } catch (URISyntaxException e) {
             LOG.warn("cannot rewrite invalid URI '" + uri + "': " + e.getMessage());
             return uri;
         }
-        result = rewrite(reference, baseURI, contextPath).toASCIIString();
+        rewritten = rewrite(reference, baseURI, contextPath);
+        if (rewritten == reference) {
+            // like rejected references: unchanged, not normalized by toASCIIString
+            lookupFilter.falsePositive();
+            return uri;
+        }
+        result = rewritten.toASCIIString();
         if (LOG.isDebugEnabled()) {
             LOG.debug("rewrite ok: '" + uri + "' -> '" + result + "'");
         }
         return result;
     }
 
+    /** Same as the java.net.URI based rewrite, but for plain paths only; @return null if uri is not plain */
+    private String rewritePlain(String uri, URI baseURI, String contextPath) {
+        int pathEnd;
+        String resolved;
+        Label label;
+        int fragment;
+        String query;
+        String result;
+
+        pathEnd = UriHelper.plainPathEnd(uri);
+        if (pathEnd == -1) {
+            return null;
+        }
+        resolved = UriHelper.resolvePlainPathWithoutContext(uri, pathEnd, baseURI, contextPath);
+        if (resolved == null) {
+            return null;
+        }
+        label = index.lookup(resolved);
+        if (label == null) {
+            lookupFilter.falsePositive();
+            return uri;
+        }
+        if (pathEnd < uri.length() && uri.charAt(pathEnd) == '?') {
+            fragment = uri.indexOf('#', pathEnd);
+            query = uri.substring(pathEnd + 1, fragment == -1 ? uri.length() : fragment);
+        } else {
+            query = null;
+        }
+        result = calculateURLString(label, baseURI, query);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("rewrite ok: '" + uri + "' -> '" + result + "'");
+        }
+        return result;
+    }
 
     public URI rewrite(URI reference, URI baseURI, String contextPath) {
         Label label;
@@ -151,6 +305,14 @@ public class LavenderRewriteEngine implements RewriteEngine {
         return calculateURL(label, baseURI, reference.getQuery());
     }
 
+    public ConsistentHash getConsistentHash() {
+        return consistentHash;
+    }
+
+    public LookupFilter getLookupFilter() {
+        return lookupFilter;
+    }
+
     public URI calculateURL(Label label, URI baseURI) {
         return calculateURL(label, baseURI, null);
     }
@@ -159,19 +321,61 @@ public class LavenderRewriteEngine implements RewriteEngine {
         if (label.getLavendelizedPath() == null) {
             throw new IllegalStateException();
         }
-        byte[] md5 = label.md5();
-        String node = consistentHash.getNodeForHash(md5);
         String lavendelizedPath = label.getLavendelizedPath();
-        URI nodeURI = baseURI.getScheme().equals("https") ? httpsNodes.get(node) : httpNodes.get(node);
+        URI nodeURI = nodeURI(label, baseURI);
         String path = nodeURI.getPath() + lavendelizedPath;
         int port = nodeURI.getPort();
         try {
-            return new URI(nodeURI.getScheme(), null, node, port, path, query, null);
+            return new URI(nodeURI.getScheme(), null, nodeURI.getHost(), port, path, query, null);
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException(e);
         }
     }
 
+    /** @return calculateURL(label, baseURI, query).toASCIIString(), without creating a URI if path and query are plain */
+    String calculateURLString(Label label, URI baseURI, String query) {
+        URI nodeURI;
+        String host;
+        String path;
+        StringBuilder result;
+
+        if (label.getLavendelizedPath() == null) {
+            throw new IllegalStateException();
+        }
+        nodeURI = nodeURI(label, baseURI);
+        host = nodeURI.getHost();
+        path = nodeURI.getRawPath() + label.getLavendelizedPath();
+        if (!UriHelper.isPlain(path, 0, path.length(), false) || (query != null && !UriHelper.isPlain(query, 0, query.length(), true))) {
+            return calculateURL(label, baseURI, query).toASCIIString();
+        }
+        result = new StringBuilder(nodeURI.getScheme().length() + host.length() + path.length() + 16);
+        result.append(nodeURI.getScheme()).append("://").append(host);
+        if (nodeURI.getPort() != -1) {
+            result.append(':').append(nodeURI.getPort());
+        }
+        result.append(path);
+        if (query != null) {
+            result.append('?').append(query);
+        }
+        return result.toString();
+    }
+
+    private URI nodeURI(Label label, URI baseURI) {
+        boolean https;
+        URI result;
+        String node;
+
+        https = baseURI.getScheme().equals("https");
+        if (single) {
+            result = singleNodes.get(https ? "https" : "http");
+            if (result != null) {
+                return result;
+            }
+        }
+        node = consistentHash.getNodeForHash(label.md5());
+        return https ? httpsNodes.get(node) : httpNodes.get(node);
+    }
+
     Label lookup(URI reference, URI baseURI, String contextPath) {
         String resolved;
         Label label;
@@ -15,7 +15,6 @@
  */
 package net.oneandone.lavender.filter.processor;
 
-import java.util.Arrays;
 import java.util.function.Predicate;
 
 import static net.oneandone.lavender.filter.processor.LavenderHtmlAttribute.ACTION;
@@ -38,26 +37,29 @@ import static net.oneandone.lavender.filter.processor.LavenderHtmlTag.SOURCE;
 
 public enum LavenderUrlRewriteMatcher implements UrlRewriteMatcher {
 
-    IMG_MATCHER(SRC, p -> p.getTag() == IMG, true),
-    IMG_SOURCESET_MATCHER(SRCSET, p -> p.getTag() == IMG, false),
-    LINK_MATCHER(HREF, p -> p.getTag() == LINK && Arrays.asList("stylesheet", "icon", "shortcut icon", "preload").contains(p.getAttribute(REL)), false),
-    SCRIPT_MATCHER(SRC, p -> p.getTag() == SCRIPT && (("text/javascript".equals(p.getAttribute(TYPE))) || !p.containsAttribute(TYPE)), false),
-    INPUT_MATCHER(SRC, p -> p.getTag() == INPUT && "image".equals(p.getAttribute(TYPE)), false),
-    A_MATCHER(HREF, p -> p.getTag() == A, false),
-    SOURCE_MATCHER(SRC, p -> p.getTag() == SOURCE, false),
-    SOURCE_SOURCESET_MATCHER(SRCSET, p -> p.getTag() == SOURCE, false),
-    FORM_MATCHER(ACTION, p -> p.getTag() == FORM, false),
-    IFRAME_MATCHER(SRC, p -> p.getTag() == IFRAME, false),
-    OBJECT_MATCHER(DATA, p -> p.getTag() == OBJECT, false),
-    DATA_LAVENDER_MATCHER(DATA_LAVENDER_ATTR, p -> true, false);
+    IMG_MATCHER(SRC, IMG, p -> true, true),
+    IMG_SOURCESET_MATCHER(SRCSET, IMG, p -> true, false),
+    LINK_MATCHER(HREF, LINK, p -> isRewrittenRel(p.getAttribute(REL)), false),
+    SCRIPT_MATCHER(SRC, SCRIPT, p -> ("text/javascript".equals(p.getAttribute(TYPE))) || !p.containsAttribute(TYPE), false),
+    INPUT_MATCHER(SRC, INPUT, p -> "image".equals(p.getAttribute(TYPE)), false),
+    A_MATCHER(HREF, A, p -> true, false),
+    SOURCE_MATCHER(SRC, SOURCE, p -> true, false),
+    SOURCE_SOURCESET_MATCHER(SRCSET, SOURCE, p -> true, false),
+    FORM_MATCHER(ACTION, FORM, p -> true, false),
+    IFRAME_MATCHER(SRC, IFRAME, p -> true, false),
+    OBJECT_MATCHER(DATA, OBJECT, p -> true, false),
+    DATA_LAVENDER_MATCHER(DATA_LAVENDER_ATTR, null, p -> true, false);
 
 
     private final Predicate<HtmlElement> predicate;
     private final HtmlAttribute attributeToRewrite;
+    /** null for all tags */
+    private final HtmlTag tag;
     private final boolean ignoreData;
 
-    LavenderUrlRewriteMatcher(HtmlAttribute attributeToRewrite, Predicate<HtmlElement> rewritePredicate, boolean ignoreData) {
+    LavenderUrlRewriteMatcher(HtmlAttribute attributeToRewrite, HtmlTag tag, Predicate<HtmlElement> rewritePredicate, boolean ignoreData) {
         this.attributeToRewrite = attributeToRewrite;
+        this.tag = tag;
         this.predicate = rewritePredicate;
         this.ignoreData = ignoreData;
     }
@@ -68,7 +70,7 @@ public enum LavenderUrlRewriteMatcher implements UrlRewriteMatcher {
 
     @Override
     public boolean matches(HtmlElement htmlElement) {
-        return predicate.test(htmlElement);
+        return (tag == null || htmlElement.getTag() == tag) && predicate.test(htmlElement);
     }
 
     @Override
@@ -76,4 +78,24 @@ public enum LavenderUrlRewriteMatcher implements UrlRewriteMatcher {
         return attributeToRewrite;
     }
 
+    @Override
+    public HtmlTag getTag() {
+        return tag;
+    }
+
+    private static boolean isRewrittenRel(String rel) {
+        if (rel == null) {
+            return false;
+        }
+        switch (rel) {
+            case "stylesheet":
+            case "icon":
+            case "shortcut icon":
+            case "preload":
+                return true;
+            default:
+                return false;
+        }
+    }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import net.oneandone.lavender.index.Index;
+import net.oneandone.lavender.index.Label;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Negative lookup in front of the index: rejects references that are guaranteed to miss before any java.net.URI work.
+ * Resolving a reference against the base uri does not change its file name (the last path segment), so a file name that
+ * does not occur in the index cannot be found. Checks the file extension against a table of all extensions in the index
+ * (exact, case-insensitive), then a Bloom filter over all file names. References whose file name might change when resolved
+ * (empty, dot segments, percent-encoded or non-ascii) are always passed.
+ */
+public class LookupFilter {
+    private static final int BITS_PER_NAME = 10;
+    /** about 1% false positives with 10 bits per name */
+    private static final int HASHES = 7;
+
+    private final NameTable extensions;
+    private final long[] bits;
+    private final int bitCount;
+
+    private final LongAdder checked;
+    private final LongAdder rejected;
+    private final LongAdder falsePositives;
+
+    public LookupFilter(Index index) {
+        Set<String> found;
+        int nameStart;
+        String path;
+
+        found = new HashSet<>();
+        this.bitCount = Math.max(64, index.size() * BITS_PER_NAME);
+        this.bits = new long[(bitCount + 63) / 64];
+        for (Label label : index) {
+            path = label.getOriginalPath();
+            nameStart = path.lastIndexOf('/') + 1;
+            found.add(path.substring(extensionStart(path, nameStart, path.length())).toLowerCase());
+            add(hash(path, nameStart, path.length()));
+        }
+        this.extensions = new NameTable(found.size());
+        for (String extension : found) {
+            extensions.put(extension, 0);
+        }
+        this.checked = new LongAdder();
+        this.rejected = new LongAdder();
+        this.falsePositives = new LongAdder();
+    }
+
+    /** @param reference without surrounding quotes; @return true if the reference is guaranteed to miss the index */
+    public boolean rejects(String reference) {
+        int end;
+        int nameStart;
+        char c;
+
+        checked.increment();
+        end = reference.length();
+        for (int i = 0; i < end; i++) {
+            c = reference.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+            if (c == '%' || c >= 128) {
+                return false;
+            }
+        }
+        nameStart = reference.lastIndexOf('/', end - 1) + 1;
+        if (nameStart == end || isDots(reference, nameStart, end)) {
+            return false;
+        }
+        if (extensions.get(reference, extensionStart(reference, nameStart, end), end) == -1 || !contains(hash(reference, nameStart, end))) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /** to be called if a reference passed by this filter was not found in the index */
+    public void falsePositive() {
+        falsePositives.increment();
+    }
+
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /** @return index after the last dot in the file name, or end if there's no dot */
+    private static int extensionStart(String str, int nameStart, int end) {
+        int dot;
+
+        dot = str.lastIndexOf('.', end - 1);
+        return dot < nameStart ? end : dot + 1;
+    }
+
+    private static boolean isDots(String str, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (str.charAt(i) != '.') {
+                return false;
+            }
+        }
+        return end - start <= 2;
+    }
+
+    /** 64 bit FNV-1a */
+    private static long hash(String str, int start, int end) {
+        long h;
+
+        h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= str.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private void add(long hash) {
+        int bit;
+
+        for (int i = 0; i < HASHES; i++) {
+            bit = bit(hash, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean contains(long hash) {
+        int bit;
+
+        for (int i = 0; i < HASHES; i++) {
+            bit = bit(hash, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** double hashing with the two halves of the hash */
+    private int bit(long hash, int i) {
+        int combined;
+
+        combined = (int) hash + i * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % bitCount;
+    }
+
+    @Override
+    public String toString() {
+        long all;
+        long no;
+        long fp;
+
+        all = getChecked();
+        no = getRejected();
+        fp = getFalsePositives();
+        return "checked " + all + ", rejected " + no + " (" + percent(no, all) + "%), false positives " + fp
+                + " (" + percent(fp, no + fp) + "% of misses)";
+    }
+
+    private static long percent(long part, long total) {
+        return total == 0 ? 0 : part * 100 / total;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+/**
+ * Maps names to indexes. Lookup is case-insensitive and works on a region of a char sequence, so no Strings are created
+ * to recognize tag and attribute names. Open addressing with linear probing; the table is filled once and never resized.
+ */
+final class NameTable {
+    /** lower-cases ASCII without a table lookup, falls back to Character.toLowerCase otherwise */
+    static char lower(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        } else {
+            return Character.toLowerCase(c);
+        }
+    }
+
+    /** @return true if chars[start, end) starts with the specified lower case prefix, ignoring case */
+    static boolean startsWith(CharSequence chars, int start, int end, String prefix, boolean ignoreCase) {
+        int length;
+        char c;
+
+        length = prefix.length();
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            c = chars.charAt(start + i);
+            if ((ignoreCase ? lower(c) : c) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final String[] names;
+    private final int[] indexes;
+    private final int mask;
+
+    NameTable(int count) {
+        int size;
+
+        size = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+        this.names = new String[size];
+        this.indexes = new int[size];
+        this.mask = size - 1;
+    }
+
+    /** @param name expected in lower case; names not in lower case are never found */
+    public void put(String name, int index) {
+        int slot;
+
+        slot = hash(name, 0, name.length()) & mask;
+        while (names[slot] != null) {
+            if (names[slot].equals(name)) {
+                return; // first one wins
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        indexes[slot] = index;
+    }
+
+    /** @return index of the name in chars[start, end), -1 if not found */
+    public int get(CharSequence chars, int start, int end) {
+        int slot;
+        String name;
+
+        slot = hash(chars, start, end) & mask;
+        while (true) {
+            name = names[slot];
+            if (name == null) {
+                return -1;
+            }
+            if (name.length() == end - start && startsWith(chars, start, end, name, true)) {
+                return indexes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int h;
+
+        h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lower(chars.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -19,4 +19,9 @@ import java.net.URI;
 
 public interface ProcessorFactory {
     Processor createProcessor(String baseContentType, URI baseURI, String contextPath);
+
+    /** @param multiplexed true for HTTP/2 and later clients, see LavenderRewriteEngine.singleOrigin */
+    default Processor createProcessor(String baseContentType, URI baseURI, String contextPath, boolean multiplexed) {
+        return createProcessor(baseContentType, baseURI, contextPath);
+    }
 }
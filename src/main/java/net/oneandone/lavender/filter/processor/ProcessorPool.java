@@ -0,0 +1,107 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free pool of processors to reuse their buffers across responses. Processors return to the pool when they are closed;
+ * they are reset, and processors that don't fit into the pool are left to the garbage collector.
+ */
+public class ProcessorPool<T extends AbstractProcessor> {
+    private final Supplier<T> factory;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLong acquired;
+    private final AtomicLong hits;
+
+    /** @param capacity 0 to disable pooling */
+    public ProcessorPool(Supplier<T> factory, int capacity) {
+        this.factory = factory;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.acquired = new AtomicLong();
+        this.hits = new AtomicLong();
+    }
+
+    public T acquire() {
+        int length;
+        int start;
+        int idx;
+        T result;
+
+        acquired.incrementAndGet();
+        length = slots.length();
+        start = start(length);
+        for (int i = 0; i < length; i++) {
+            idx = (start + i) % length;
+            result = slots.get(idx);
+            if (result != null && slots.compareAndSet(idx, result, null)) {
+                hits.incrementAndGet();
+                return result;
+            }
+        }
+        result = factory.get();
+        result.setRelease(release(result));
+        return result;
+    }
+
+    /** @return invoked by AbstractProcessor.close */
+    private Runnable release(T processor) {
+        return () -> {
+            int length;
+            int start;
+            int idx;
+
+            processor.reset();
+            length = slots.length();
+            start = start(length);
+            for (int i = 0; i < length; i++) {
+                idx = (start + i) % length;
+                if (slots.get(idx) == null && slots.compareAndSet(idx, null, processor)) {
+                    return;
+                }
+            }
+        };
+    }
+
+    /** spread threads over the slots to reduce contention */
+    private static int start(int length) {
+        return length == 0 ? 0 : (int) (Thread.currentThread().getId() % length);
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public String toString() {
+        long a;
+        long h;
+
+        a = acquired.get();
+        h = hits.get();
+        return a + " acquired, " + h + " hits (" + (a == 0 ? 0 : h * 100 / a) + "%), capacity " + slots.length();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics about rewritten responses, per content type. Processors count locally and report once per response
+ * when they're closed, so the overhead per response is a few adders and one histogram update.
+ */
+public class RewriteMetrics {
+    private final Map<String, Counters> types;
+
+    public RewriteMetrics() {
+        this.types = new ConcurrentHashMap<>();
+    }
+
+    public Counters get(String contentType) {
+        return types.computeIfAbsent(contentType, Counters::new);
+    }
+
+    /** @return one line per content type, sorted by content type */
+    public String[] lines() {
+        List<String> result;
+
+        result = new ArrayList<>();
+        for (Counters counters : new TreeMap<>(types).values()) {
+            result.add(counters.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    public static class Counters {
+        public final String contentType;
+        public final LongAdder responses;
+        public final LongAdder chars;
+        public final LongAdder rewrites;
+        /** urls not found in the index, i.e. they remain unchanged */
+        public final LongAdder misses;
+        public final LongAdder gzipBytes;
+        /** processing time per response, including writes to the underlying stream */
+        public final LatencyHistogram latency;
+
+        public Counters(String contentType) {
+            this.contentType = contentType;
+            this.responses = new LongAdder();
+            this.chars = new LongAdder();
+            this.rewrites = new LongAdder();
+            this.misses = new LongAdder();
+            this.gzipBytes = new LongAdder();
+            this.latency = new LatencyHistogram();
+        }
+
+        public void record(long chars, int rewrites, int misses, long nanos) {
+            this.responses.increment();
+            this.chars.add(chars);
+            this.rewrites.add(rewrites);
+            this.misses.add(misses);
+            this.latency.record(nanos / 1000);
+        }
+
+        @Override
+        public String toString() {
+            return contentType + ": " + responses.sum() + " responses, " + chars.sum() + " chars, " + rewrites.sum() + " rewrites, "
+                    + misses.sum() + " misses, " + gzipBytes.sum() + " gzip bytes, latency " + latency;
+        }
+    }
+}
@@ -42,6 +42,150 @@ public class UriHelper {
         return resolved;
     }
 
+    //-- fast path for references that don't need java.net.URI
+
+    /** chars allowed in paths without escaping; ':' is excluded because it might start a scheme */
+    private static final boolean[] PATH = chars("-._~!$&'()*+,;=@/");
+    /** chars allowed in queries and fragments without escaping */
+    private static final boolean[] QUERY = chars("-._~!$&'()*+,;=@/:?");
+
+    private static boolean[] chars(String special) {
+        boolean[] result;
+
+        result = new boolean[128];
+        for (char c = 'a'; c <= 'z'; c++) {
+            result[c] = true;
+            result[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            result[c] = true;
+        }
+        for (int i = 0; i < special.length(); i++) {
+            result[special.charAt(i)] = true;
+        }
+        return result;
+    }
+
+    /** @return true if str[start, end) consists of ascii chars that need no escaping in a path (or query, if query is true) */
+    public static boolean isPlain(CharSequence str, int start, int end, boolean query) {
+        boolean[] table;
+        char c;
+
+        table = query ? QUERY : PATH;
+        for (int i = start; i < end; i++) {
+            c = str.charAt(i);
+            if (c >= 128 || !table[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the end of the path, i.e. the index of the first '?' or '#', or the length of the reference; -1 if the
+     * reference is not a plain absolute or relative path with an optional query and fragment, e.g. if it has a scheme,
+     * an authority, percent escapes or an empty path.
+     */
+    public static int plainPathEnd(String reference) {
+        int length;
+        int end;
+        int fragment;
+
+        length = reference.length();
+        end = 0;
+        while (end < length && reference.charAt(end) != '?' && reference.charAt(end) != '#') {
+            end++;
+        }
+        if (end == 0 || reference.startsWith("//") || !isPlain(reference, 0, end, false)) {
+            return -1;
+        }
+        if (end < length) {
+            fragment = reference.charAt(end) == '#' ? end : reference.indexOf('#', end + 1);
+            if (fragment == -1) {
+                fragment = length;
+            }
+            if (!isPlain(reference, end + 1, fragment, true) || !isPlain(reference, Math.min(fragment + 1, length), length, true)) {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Same as resolvePathWithoutContext(new URI(reference), baseURI, contextPath), but without creating URIs. Follows the
+     * RFC 2396 rules implemented by java.net.URI: absolute paths are not normalized, a relative path is appended to the
+     * base path up to its last slash and normalized.
+     *
+     * @param pathEnd as returned by plainPathEnd
+     * @return null if this reference needs java.net.URI, e.g. because it contains '..' segments above the root
+     */
+    public static String resolvePlainPathWithoutContext(String reference, int pathEnd, URI baseURI, String contextPath) {
+        String base;
+        String resolved;
+        int idx;
+
+        if (reference.charAt(0) == '/') {
+            resolved = reference.substring(0, pathEnd);
+        } else {
+            base = baseURI.getRawPath();
+            if (base == null || base.isEmpty() || base.indexOf('%') != -1) {
+                // an empty base path is resolved differently, depending on the java version
+                return null;
+            }
+            idx = base.lastIndexOf('/');
+            resolved = normalize(base.substring(0, idx + 1) + reference.substring(0, pathEnd));
+            if (resolved == null) {
+                return null;
+            }
+        }
+        if (resolved.startsWith(contextPath)) {
+            resolved = resolved.substring(contextPath.length());
+        }
+        return resolved;
+    }
+
+    /** @return path with "." and "name/.." segments removed; null if this is not possible without java.net.URI */
+    static String normalize(String path) {
+        StringBuilder result;
+        int start;
+        int end;
+        int min;
+        int idx;
+
+        if (path.contains("//")) {
+            return null; // java.net.URI collapses them
+        }
+        if (!path.contains("./") && !path.endsWith("/.") && !path.endsWith("/..") && !path.equals(".") && !path.equals("..")) {
+            return path;
+        }
+        result = new StringBuilder(path.length());
+        min = path.startsWith("/") ? 1 : 0;
+        result.append(path, 0, min);
+        start = min;
+        while (start <= path.length()) {
+            end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end - start == 1 && path.charAt(start) == '.') {
+                // skip
+            } else if (end - start == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.') {
+                if (result.length() == min) {
+                    return null; // above the root
+                }
+                idx = result.lastIndexOf("/", result.length() - 2);
+                result.setLength(Math.max(idx + 1, min));
+            } else {
+                result.append(path, start, end);
+                if (end < path.length()) {
+                    result.append('/');
+                }
+            }
+            start = end + 1;
+        }
+        return result.toString();
+    }
+
     private UriHelper() {
     }
 }
@@ -22,4 +22,12 @@ public interface UrlRewriteMatcher {
 
     HtmlAttribute getAttributeToRewrite();
 
+    /**
+     * @return the tag this matcher is restricted to, or null for all tags. Used to precompute candidate matchers per tag and
+     *         attribute; matches is invoked anyway.
+     */
+    default HtmlTag getTag() {
+        return null;
+    }
+
 }
@@ -23,8 +23,16 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
 
 /**
  * A set of labels.
@@ -192,6 +200,24 @@ public class Index implements Iterable<Label> {
         return new Label(originalPath, lavendelizedPath, md5);
     }
 
+    /**
+     * Replaces all paths and values by the strings returned by the specified function; used by IndexPool.
+     * Not thread-safe, must not be called while the index is in use.
+     */
+    void replaceEntries(UnaryOperator<String> function) {
+        List<String> replaced;
+
+        replaced = new ArrayList<>(2 * properties.size());
+        for (String originalPath : properties.stringPropertyNames()) {
+            replaced.add(function.apply(originalPath));
+            replaced.add(function.apply(properties.getProperty(originalPath)));
+        }
+        properties.clear();
+        for (int i = 0; i < replaced.size(); i += 2) {
+            properties.setProperty(replaced.get(i), replaced.get(i + 1));
+        }
+    }
+
     public boolean equals(Object obj) {
         if (obj instanceof Index) {
             return properties.equals(((Index) obj).properties);
@@ -203,6 +229,24 @@ public class Index implements Iterable<Label> {
         return properties.hashCode();
     }
 
+    /** @return md5 over all entries in originalPath order; equal indexes have equal digests, independent of their file layout */
+    public byte[] digest() {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '=');
+            digest.update(properties.getProperty(key).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return digest.digest();
+    }
+
     public void save(Node indexFile) throws IOException {
         try (OutputStream dest = indexFile.newOutputStream()) {
             save(dest);
@@ -215,20 +259,42 @@ public class Index implements Iterable<Label> {
         save(writer);
     }
 
-    /** dest will not be closed */
+    /** dest will not be closed; writes canonical(), so equal indexes are saved to equal files */
     public void save(Writer writer) throws IOException {
-        properties.store(writer, null);
+        writer.write(canonical());
+        writer.flush();
     }
 
-    public String toString() {
-        StringWriter result;
+    /**
+     * @return properties file without timestamp comment, entries sorted and separated by '\n'; escaping is the same as in
+     *         Properties.store, so the result loads with Properties.load
+     */
+    public String canonical() {
+        StringWriter stored;
+        List<String> lines;
+        StringBuilder result;
 
-        result = new StringWriter();
+        stored = new StringWriter();
         try {
-            save(result);
+            properties.store(stored, null);
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
+        lines = new ArrayList<>(properties.size());
+        for (String line : stored.toString().split("\r?\n")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+        result = new StringBuilder(stored.getBuffer().length());
+        for (String line : lines) {
+            result.append(line).append('\n');
+        }
         return result.toString();
     }
+
+    public String toString() {
+        return canonical();
+    }
 }
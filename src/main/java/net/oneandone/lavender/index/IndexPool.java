@@ -0,0 +1,89 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.index;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Canonicalizes the strings of production indexes with String.intern, so webapps with the same entries (e.g. shared Pustefix
+ * module assets) share them. String.intern is JVM-wide, so this works even though every webapp loads Lavender with its own
+ * class loader and thus gets its own pool. Statistics cover the indexes of this pool only: saved bytes are the duplicates this
+ * pool's indexes dropped because an equal string was already interned, by any webapp.
+ */
+public final class IndexPool {
+    public static final IndexPool INSTANCE = new IndexPool();
+
+    /** rough heap size of a String without its chars */
+    private static final int STRING_OVERHEAD = 40;
+
+    /** index -> bytes saved when interning it */
+    private final Map<Index, Long> indexes;
+
+    public IndexPool() {
+        this.indexes = new IdentityHashMap<>();
+    }
+
+    /** Replaces the strings of the specified index by canonical ones. Must be called before the index is used. */
+    public synchronized void intern(Index index) {
+        long[] saved;
+
+        saved = new long[1];
+        index.replaceEntries(str -> {
+            String result;
+
+            result = str.intern();
+            if (result != str) {
+                saved[0] += STRING_OVERHEAD + 2L * str.length();
+            }
+            return result;
+        });
+        indexes.put(index, saved[0]);
+    }
+
+    /** Forgets an index previously passed to intern. Does not touch the index, requests in progress may still use it. */
+    public synchronized void release(Index index) {
+        if (indexes.remove(index) == null) {
+            throw new IllegalStateException("not interned");
+        }
+    }
+
+    public synchronized int getIndexes() {
+        return indexes.size();
+    }
+
+    /** @return estimated heap bytes saved by the indexes of this pool because their strings were already interned */
+    public synchronized long getSavedBytes() {
+        long result;
+
+        result = 0;
+        for (long saved : indexes.values()) {
+            result += saved;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int entries;
+
+        entries = 0;
+        for (Index index : indexes.keySet()) {
+            entries += index.size();
+        }
+        return indexes.size() + " indexes, " + entries + " entries, ~" + getSavedBytes() / 1024 + "k saved by String.intern";
+    }
+}
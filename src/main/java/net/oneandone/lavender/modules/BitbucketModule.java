@@ -23,6 +23,9 @@ import java.util.List;
 import java.util.Map;
 
 public class BitbucketModule extends Module<BitbucketEntry> {
+    /** milliseconds to reuse the latest commit when checking resources for staleness */
+    public static final String POLL_PROPERTY = "lavender.bitbucket.poll";
+
     private final Bitbucket bitbucket;
     private final String project;
     private final String repository;
@@ -37,6 +40,8 @@ public class BitbucketModule extends Module<BitbucketEntry> {
     private String loadedRevision;
     private BitbucketContentMap contentMap;
 
+    private final StalenessCheck<String> latestCommit;
+
     // CHECKSTYLE:OFF
     public BitbucketModule(Bitbucket bitbucket, String project, String repository, String branchOrTag, String accessPathPrefix,
                            String name, boolean lavendelize, String resourcePathPrefix, String targetPathPrefix, Filter filter, PustefixJarConfig config) {
@@ -54,6 +59,8 @@ public class BitbucketModule extends Module<BitbucketEntry> {
 
         this.loadedRevision = null;
         this.contentMap = null;
+        this.latestCommit = new StalenessCheck<>(() -> bitbucket.latestCommit(project, repository, branchOrTag),
+                Long.getLong(POLL_PROPERTY, 5000));
     }
     // CHECKSTYLE:ON
 
@@ -94,8 +101,17 @@ public class BitbucketModule extends Module<BitbucketEntry> {
         return result;
     }
 
+    /** @return true if the branch or tag moved away from the specified commit; at most one query per poll interval */
+    public boolean isOutdated(String at) {
+        try {
+            return !at.equals(latestCommit.get());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
     @Override
     protected Resource createResource(String resourcePath, BitbucketEntry entry) {
-        return new BitbucketResource(bitbucket, project, repository, resourcePath, entry, loadedRevision);
+        return new BitbucketResource(this, bitbucket, project, repository, resourcePath, entry, loadedRevision);
     }
 }
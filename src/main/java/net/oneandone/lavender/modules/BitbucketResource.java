@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 public class BitbucketResource extends Resource {
+    private final BitbucketModule module;
     private final Bitbucket bitbucket;
     private final String project;
     private final String repository;
@@ -26,7 +27,9 @@ public class BitbucketResource extends Resource {
     private final BitbucketEntry entry;
     private final String at;
 
-    public BitbucketResource(Bitbucket bitbucket, String project, String repository, String resourcePath, BitbucketEntry entry, String at) {
+    public BitbucketResource(BitbucketModule module, Bitbucket bitbucket, String project, String repository, String resourcePath,
+                             BitbucketEntry entry, String at) {
+        this.module = module;
         this.bitbucket = bitbucket;
         this.project = project;
         this.repository = repository;
@@ -61,8 +64,8 @@ public class BitbucketResource extends Resource {
 
     @Override
     public boolean isOutdated() {
-        // the least expensive way I know to check for changes is to re-load changes with content ids
+        // compares commits, not content ids: any commit on the branch marks all resources as outdated
         // (note that Bitbucket's lastModified api call didn't work for me, some command wasn'd found on the server)
-        return true;
+        return module.isOutdated(at);
     }
 }
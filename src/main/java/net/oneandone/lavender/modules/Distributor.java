@@ -15,6 +15,7 @@
  */
 package net.oneandone.lavender.modules;
 
+import com.jcraft.jsch.JSchException;
 import net.oneandone.lavender.config.Connection;
 import net.oneandone.lavender.config.Docroot;
 import net.oneandone.lavender.index.Index;
@@ -22,6 +23,7 @@ import net.oneandone.lavender.index.Label;
 import net.oneandone.lavender.index.Util;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.file.FileNode;
+import net.oneandone.sushi.fs.ssh.SshNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,17 +39,21 @@ import java.util.Map;
 public class Distributor {
     private static final Logger LOG = LoggerFactory.getLogger(Distributor.class);
 
+    /**
+     * Indexes have to be the same on all hosts. They're downloaded from the first host only; other hosts are verified by comparing
+     * md5 sums computed on the host. Index files are saved in canonical form, so equal indexes have equal md5 sums. If the md5
+     * differs (e.g. for files saved by older versions with a timestamp) or cannot be computed, the index is downloaded and compared.
+     */
     public static Distributor open(FileNode cacheroot, List<Connection> connections, Docroot docroot, String indexName) throws IOException {
         Node destroot;
         Node file;
         Map<Node, Node> targets;
-        Index all;
-        Index prev;
+        Loaded all;
+        Loaded prev;
 
         targets = new LinkedHashMap<>(); // to preserve order
         if (connections.isEmpty()) {
-            prev = new Index();
-            all = new Index();
+            return new Distributor(cacheroot, targets, new Index(), new Index());
         } else {
             all = null;
             prev = null;
@@ -58,28 +64,56 @@ public class Distributor {
                 targets.put(file, destroot);
                 all = loadSame(docroot.index(connection, Index.ALL_IDX), all);
             }
+            return new Distributor(cacheroot, targets, all.index, prev.index);
         }
-        return new Distributor(cacheroot, targets, all, prev);
     }
 
-    private static Index loadSame(Node src, Index prev) throws IOException {
+    private static Loaded loadSame(Node src, Loaded prev) throws IOException {
+        String md5;
         Index tmp;
 
+        md5 = md5Opt(src);
+        if (prev != null && md5 != null && md5.equals(prev.md5)) {
+            return prev;
+        }
         if (src.exists()) {
             tmp = Index.load(src);
         } else {
             tmp = new Index();
         }
         if (prev == null) {
-            return tmp;
+            return new Loaded(tmp, md5);
         } else {
-            if (!prev.equals(tmp)) {
+            if (!prev.index.equals(tmp)) {
                 throw new IOException("index mismatch: " + src.getUri());
             }
             return prev;
         }
     }
 
+    /** @return md5 computed where the file is located; "" if the file does not exist; null if the md5 is not available */
+    private static String md5Opt(Node file) throws IOException {
+        String output;
+
+        if (!file.exists()) {
+            return "";
+        }
+        if (file instanceof SshNode) {
+            try {
+                output = ((SshNode) file).getRoot().exec(true, "md5sum", "/" + file.getPath());
+            } catch (JSchException | IOException e) {
+                LOG.debug(file.getUri() + ": md5sum failed, falling back to download: " + e.getMessage());
+                return null;
+            }
+            output = output.trim();
+            return output.length() < 32 ? null : output.substring(0, 32);
+        } else if (file instanceof FileNode) {
+            return file.md5();
+        } else {
+            return null;
+        }
+    }
+
     /** left: index location; right: docroot */
     private final Buffer buffer;
     private final FileNode cacheroot;
@@ -227,4 +261,15 @@ public class Distributor {
             return Util.md5(buf, count);
         }
     }
+
+    /** index and the md5 of its file; md5 is null if not available */
+    private static class Loaded {
+        public final Index index;
+        public final String md5;
+
+        Loaded(Index index, String md5) {
+            this.index = index;
+            this.md5 = md5;
+        }
+    }
 }
@@ -50,10 +50,20 @@ public abstract class Module<T> implements Iterable<Resource> {
 
     private final Filter filter;
 
-    /** maps resource names for module specific data for this resource; this data is typically used to instantiated resources */
-    private Map<String, T> lazyEntries;
+    /**
+     * Lower-case name suffixes if all filter includes are extension patterns (like the default includes), null otherwise. A path
+     * without one of these suffixes cannot match the filter, so it's rejected without running the filter's glob patterns.
+     */
+    private final String[] includeSuffixes;
+
+    /**
+     * maps resource names for module specific data for this resource; this data is typically used to instantiated resources.
+     * Volatile because refreshEntries swaps in new maps from a background thread.
+     */
+    private volatile Map<String, T> lazyEntries;
 
-    private long lastScan;
+    private volatile long lastScan;
+    private volatile long lastScanDuration;
 
     public Module(String origin, String type, String name, boolean lavendelize, String resourcePathPrefix, String targetPathPrefix, Filter filter) {
         this.origin = origin;
@@ -63,9 +73,44 @@ public abstract class Module<T> implements Iterable<Resource> {
         this.resourcePathPrefix = resourcePathPrefix;
         this.targetPathPrefix = targetPathPrefix;
         this.filter = filter;
+        this.includeSuffixes = includeSuffixes(filter);
         this.lazyEntries = null;
     }
 
+    private static final String SUFFIX_INCLUDE = "**/*.";
+
+    private static String[] includeSuffixes(Filter filter) {
+        String[] includes;
+        String[] result;
+        String suffix;
+
+        includes = filter.getIncludes();
+        if (includes.length == 0) {
+            return null;
+        }
+        result = new String[includes.length];
+        for (int i = 0; i < includes.length; i++) {
+            if (!includes[i].startsWith(SUFFIX_INCLUDE)) {
+                return null;
+            }
+            suffix = includes[i].substring(SUFFIX_INCLUDE.length() - 1);
+            if (suffix.length() == 1 || containsAny(suffix, "/*?[]{}\\")) {
+                return null;
+            }
+            result[i] = suffix.toLowerCase();
+        }
+        return result;
+    }
+
+    private static boolean containsAny(String str, String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (str.indexOf(chars.charAt(i)) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //--
 
     public String getOrigin() {
@@ -112,22 +157,57 @@ public abstract class Module<T> implements Iterable<Resource> {
         }
     }
 
+    /** @return millis of the last scan, 0 if entries have never been scanned */
+    public long getLastScan() {
+        return lastScan;
+    }
+
+    /** @return duration of the last scan in millis */
+    public long getLastScanDuration() {
+        return lastScanDuration;
+    }
+
+    /**
+     * Re-loads entries and swaps them in when loading is done. Until then, concurrent probes see the previous entries, so this
+     * method can be called from a background thread without blocking request threads.
+     */
+    public synchronized void refreshEntries() throws IOException {
+        scan();
+    }
+
     private Map<String, T> entries() throws IOException {
+        Map<String, T> result;
+
+        result = lazyEntries;
+        if (result == null) {
+            synchronized (this) {
+                result = lazyEntries;
+                if (result == null) {
+                    result = scan();
+                }
+            }
+        }
+        return result;
+    }
+
+    /** caller has to synchronize on this module */
+    private Map<String, T> scan() throws IOException {
         long started;
+        Map<String, T> result;
 
-        if (lazyEntries == null) {
-            started = System.currentTimeMillis();
-            try {
-                lazyEntries = loadEntries();
-            } catch (RuntimeException e) {
-                throw e;
-            } catch (Exception e) {
-                throw new IOException(name + " entries failed: " + e.getMessage(), e);
-            }
-            lastScan = System.currentTimeMillis();
-            LOG.debug(name + ": scanned " + lazyEntries.size() + " entries in " + (lastScan - started) + "ms");
+        started = System.currentTimeMillis();
+        try {
+            result = loadEntries();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(name + " entries failed: " + e.getMessage(), e);
         }
-        return lazyEntries;
+        lazyEntries = result;
+        lastScan = System.currentTimeMillis();
+        lastScanDuration = lastScan - started;
+        LOG.debug(name + ": scanned " + result.size() + " entries in " + lastScanDuration + "ms");
+        return result;
     }
 
     /** @return all entries that match the module's filter */
@@ -139,6 +219,9 @@ public abstract class Module<T> implements Iterable<Resource> {
         if (!resourcePath.startsWith(resourcePathPrefix)) {
             return null;
         }
+        if (!hasIncludeSuffix(resourcePath)) {
+            return null;
+        }
         path = resourcePath.substring(resourcePathPrefix.length());
         if (!filter.matches(path)) {
             return null;
@@ -146,6 +229,20 @@ public abstract class Module<T> implements Iterable<Resource> {
         return path;
     }
 
+    /** case-insensitive, because it's only a pre-check; the filter decides */
+    private boolean hasIncludeSuffix(String resourcePath) {
+        if (includeSuffixes == null) {
+            return true;
+        }
+        for (String suffix : includeSuffixes) {
+            if (resourcePath.length() - suffix.length() >= resourcePathPrefix.length()
+                    && resourcePath.regionMatches(true, resourcePath.length() - suffix.length(), suffix, 0, suffix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //-- resources
 
     /**
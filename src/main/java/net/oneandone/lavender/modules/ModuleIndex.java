@@ -0,0 +1,131 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefix trie over Module.getResourcePathPrefix(). Routes a resource path to the modules whose prefix matches, without checking
+ * every module. Candidates are returned in module order, because the first module that matches wins.
+ */
+public class ModuleIndex {
+    private final List<Module> modules;
+    private final Node root;
+
+    public ModuleIndex(List<Module> modules) {
+        Node node;
+        String prefix;
+
+        this.modules = new ArrayList<>(modules);
+        this.root = new Node();
+        for (int i = 0; i < this.modules.size(); i++) {
+            prefix = this.modules.get(i).getResourcePathPrefix();
+            node = root;
+            for (int c = 0; c < prefix.length(); c++) {
+                node = node.childOrCreate(prefix.charAt(c));
+            }
+            node.addModule(i);
+        }
+    }
+
+    public List<Module> getModules() {
+        return Collections.unmodifiableList(modules);
+    }
+
+    public int size() {
+        return modules.size();
+    }
+
+    /** @return modules whose resource path prefix is a prefix of the specified path, in module order; never null */
+    public List<Module> lookup(String resourcePath) {
+        int[] found;
+        int count;
+        Node node;
+        List<Module> result;
+
+        found = null;
+        count = 0;
+        node = root;
+        for (int c = 0; node != null; c++) {
+            if (node.modules.length > 0) {
+                if (found == null) {
+                    found = new int[modules.size()];
+                }
+                System.arraycopy(node.modules, 0, found, count, node.modules.length);
+                count += node.modules.length;
+            }
+            if (c == resourcePath.length()) {
+                break;
+            }
+            node = node.child(resourcePath.charAt(c));
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(found, 0, count);
+        result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(modules.get(found[i]));
+        }
+        return result;
+    }
+
+    //--
+
+    private static class Node {
+        private static final int[] NO_MODULES = new int[0];
+        private static final char[] NO_CHARS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /** indexes into the module list */
+        private int[] modules = NO_MODULES;
+        private char[] chars = NO_CHARS;
+        private Node[] children = NO_CHILDREN;
+
+        public Node child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        public Node childOrCreate(char c) {
+            Node result;
+            int length;
+
+            result = child(c);
+            if (result == null) {
+                result = new Node();
+                length = chars.length;
+                chars = Arrays.copyOf(chars, length + 1);
+                children = Arrays.copyOf(children, length + 1);
+                chars[length] = c;
+                children[length] = result;
+            }
+            return result;
+        }
+
+        public void addModule(int idx) {
+            modules = Arrays.copyOf(modules, modules.length + 1);
+            modules[modules.length - 1] = idx;
+        }
+    }
+}
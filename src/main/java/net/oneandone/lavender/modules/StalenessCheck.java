@@ -0,0 +1,63 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import java.io.IOException;
+
+/**
+ * Coalesces the staleness checks of all resources of one module: the first check in a window queries the repository once,
+ * later checks in the same window get the cached result, concurrent checks wait for the query in progress.
+ * Failed queries are not cached.
+ */
+public class StalenessCheck<T> {
+    public interface Query<T> {
+        T run() throws IOException;
+    }
+
+    private final Query<T> query;
+    /** milliseconds */
+    private final long window;
+
+    private long lastQuery;
+    private T value;
+    private int queries;
+
+    public StalenessCheck(Query<T> query, long window) {
+        this.query = query;
+        this.window = window;
+        this.lastQuery = 0;
+        this.value = null;
+        this.queries = 0;
+    }
+
+    public synchronized T get() throws IOException {
+        long now;
+
+        now = System.currentTimeMillis();
+        if (queries > 0 && now - lastQuery < window) {
+            return value;
+        }
+        value = query.run();
+        lastQuery = now;
+        queries++;
+        return value;
+    }
+
+    /** @return number of repository queries so far */
+    public synchronized int getQueries() {
+        return queries;
+    }
+}
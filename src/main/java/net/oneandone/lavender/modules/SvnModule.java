@@ -27,13 +27,18 @@ import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -42,9 +47,16 @@ import java.util.TreeMap;
 public class SvnModule extends Module<SvnEntry> {
     private static final Logger LOG = LoggerFactory.getLogger(SvnModule.class);
 
+    /** more revisions since the last load are not applied incrementally; the full listing is probably faster */
+    private static final int MAX_LOG_REVISIONS = 100;
+
     private final FileNode cacheFile;
 
     private final SvnNode root;
+    /** null until first used */
+    private SvnPoller poller;
+    /** absolute repository path of root; null until first used */
+    private String modulePath;
     /** Revision you want to pin this module to, -1 for no pinning */
     private final long pinnedRevision;
 
@@ -63,6 +75,8 @@ public class SvnModule extends Module<SvnEntry> {
         super(root.getUri().toString(), type, name, lavendelize, resourcePathPrefix, targetPathPrefix, filter);
         this.cacheFile = cacheFile;
         this.root = root;
+        this.poller = null;
+        this.modulePath = null;
         this.pinnedRevision = pinnedRevision;
         this.lastModifiedRepository = -1;
         this.lastModifiedModule = -1;
@@ -73,6 +87,23 @@ public class SvnModule extends Module<SvnEntry> {
         return root;
     }
 
+    /** shared with all modules of the same repository */
+    public synchronized SvnPoller getPoller() throws SVNException {
+        if (poller == null) {
+            poller = SvnPoller.forRoot(root);
+            modulePath = root.getRoot().getRepository().getRepositoryPath(root.getPath());
+        }
+        return poller;
+    }
+
+    /** Releases the shared poller; the module must not be used anymore */
+    public synchronized void close() {
+        if (poller != null) {
+            poller.close();
+            poller = null;
+        }
+    }
+
     protected Map<String, SvnEntry> loadEntries() throws IOException {
         Map<String, SvnEntry> loadedEntries;
         long nextModifiedRepository;
@@ -86,7 +117,12 @@ public class SvnModule extends Module<SvnEntry> {
             }
             nextModifiedRepository = getRepositoryLastModified();
             if (nextModifiedRepository != lastModifiedRepository) {
-                nextModifiedModule = getModuleLastModified();
+                if (pinnedRevision == -1 && lastModifiedRepository != -1
+                        && !getPoller().isChanged(modulePath, lastModifiedRepository, nextModifiedRepository)) {
+                    nextModifiedModule = lastModifiedModule;
+                } else {
+                    nextModifiedModule = getModuleLastModified(nextModifiedRepository);
+                }
             } else {
                 nextModifiedModule = lastModifiedModule;
             }
@@ -101,8 +137,12 @@ public class SvnModule extends Module<SvnEntry> {
                 return loadedEntries;
             }
 
-            LOG.info(root.getUri() + ": loading entries from server, revision " + lastModifiedModule + " -> " + nextModifiedModule);
+            entries = loadedEntries == null || nextModifiedModule < lastModifiedModule
+                    ? null : loadChangedEntries(loadedEntries, nextModifiedRepository);
+            if (entries == null) {
+                LOG.info(root.getUri() + ": loading entries from server, revision " + lastModifiedModule + " -> " + nextModifiedModule);
                 entries = loadServerEntries(nextModifiedRepository);
+            }
             saveCache(entries, nextModifiedModule);
             lastModifiedRepository = nextModifiedRepository;
             lastModifiedModule = nextModifiedModule;
@@ -113,28 +153,27 @@ public class SvnModule extends Module<SvnEntry> {
     }
 
     private long getRepositoryLastModified() throws SVNException {
-        return pinnedRevision == -1 ? root.getRoot().getRepository().getLatestRevision() : pinnedRevision;
+        return pinnedRevision == -1 ? getPoller().head() : pinnedRevision;
     }
 
     /** last modified revision of the modules directory */
-    private long getModuleLastModified() throws SVNException {
-        final List<SVNDirEntry> result;
+    private long getModuleLastModified(long repositoryRevision) throws SVNException {
+        SVNRepository session;
+        SVNDirEntry entry;
 
         if (pinnedRevision != -1) {
             return pinnedRevision;
         }
-        result = new ArrayList<>();
-        root.getRoot().getClientMananger().getLogClient().doList(root.getSvnurl(), null, SVNRevision.create(lastModifiedRepository),
-                false, SVNDepth.EMPTY, SVNDirEntry.DIRENT_ALL, new ISVNDirEntryHandler() {
-                    @Override
-                    public void handleDirEntry(SVNDirEntry dirEntry) {
-                        result.add(dirEntry);
-                    }
-                });
-        if (result.size() != 1) {
-            throw new IllegalStateException("" + result.size());
+        session = getPoller().acquire();
+        try {
+            entry = session.info(modulePath, repositoryRevision);
+        } finally {
+            poller.release(session);
+        }
+        if (entry == null) {
+            throw new IllegalStateException("not found: " + modulePath);
         }
-        return result.get(0).getRevision();
+        return entry.getRevision();
     }
 
     private void saveCache(Map<String, SvnEntry> entries, long moduleRevision) throws IOException {
@@ -221,6 +260,119 @@ public class SvnModule extends Module<SvnEntry> {
         return entries;
     }
 
+    /**
+     * Applies the changed paths reported by svn log since lastModifiedModule to a copy of the cached entries.
+     *
+     * @return null if the log is too large or contains changes that cannot be applied; use a full listing in this case
+     */
+    private Map<String, SvnEntry> loadChangedEntries(Map<String, SvnEntry> cached, long revision) {
+        final List<SVNLogEntry> log;
+        SVNRepository repository;
+        Map<String, SvnEntry> result;
+
+        log = new ArrayList<>();
+        try {
+            repository = getPoller().acquire();
+        } catch (SVNException e) {
+            LOG.info(root.getUri() + ": svn log failed, falling back to full listing: " + e.getMessage());
+            return null;
+        }
+        try {
+            repository.log(new String[] { modulePath }, lastModifiedModule + 1, revision, true, true, MAX_LOG_REVISIONS + 1, log::add);
+        } catch (SVNException e) {
+            LOG.info(root.getUri() + ": svn log failed, falling back to full listing: " + e.getMessage());
+            return null;
+        } finally {
+            poller.release(repository);
+        }
+        if (log.size() > MAX_LOG_REVISIONS) {
+            LOG.info(root.getUri() + ": more than " + MAX_LOG_REVISIONS + " changes, falling back to full listing");
+            return null;
+        }
+        result = new TreeMap<>(cached);
+        for (SVNLogEntry entry : log) {
+            if (!applyChanges(result, modulePath, entry.getRevision(), entry.getChangedPaths().values(), getFilter(), jarConfig)) {
+                LOG.info(root.getUri() + ": r" + entry.getRevision() + " cannot be applied incrementally, falling back to full listing");
+                return null;
+            }
+        }
+        LOG.info(root.getUri() + ": applied " + log.size() + " revisions " + lastModifiedModule + " -> " + revision + " to cached entries");
+        return result;
+    }
+
+    /**
+     * Applies the changed paths of one revision.
+     *
+     * @param modulePath repository path of the module without trailing slash
+     * @return false for copies, replacements, changes of the module directory itself or paths of unknown kind
+     */
+    static boolean applyChanges(Map<String, SvnEntry> entries, String modulePath, long revision, Collection<SVNLogEntryPath> changes,
+                                Filter filter, PustefixJarConfig jarConfig) {
+        String path;
+        String accessPath;
+        String publicPath;
+        Iterator<SvnEntry> iter;
+        SvnEntry entry;
+
+        for (SVNLogEntryPath change : changes) {
+            path = change.getPath();
+            if (modulePath.startsWith(path) && (modulePath.length() == path.length() || modulePath.charAt(path.length()) == '/')) {
+                if (change.getType() == SVNLogEntryPath.TYPE_MODIFIED) {
+                    continue; // properties of the module directory or one of its parents
+                }
+                return false;
+            }
+            if (!path.startsWith(modulePath + "/")) {
+                continue; // other paths in the same commit
+            }
+            if (change.getType() == SVNLogEntryPath.TYPE_REPLACED || change.getCopyPath() != null) {
+                return false;
+            }
+            accessPath = path.substring(modulePath.length() + 1);
+            if (change.getType() == SVNLogEntryPath.TYPE_DELETED) {
+                iter = entries.values().iterator();
+                while (iter.hasNext()) {
+                    entry = iter.next();
+                    if (entry.accessPath.equals(accessPath) || entry.accessPath.startsWith(accessPath + "/")) {
+                        iter.remove();
+                    }
+                }
+            } else if (change.getKind() == SVNNodeKind.FILE) {
+                if (filter.matches(accessPath)) {
+                    publicPath = jarConfig != null ? jarConfig.getPath(accessPath) : accessPath;
+                    if (publicPath != null) {
+                        entries.put(publicPath, new SvnEntry(publicPath, accessPath, revision));
+                    }
+                }
+            } else if (change.getKind() != SVNNodeKind.DIR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Uses the head revision and changed paths of the shared poller, so the resources of all modules of a repository are checked
+     * with at most one getLatestRevision and one log per poll interval.
+     *
+     * @return true if the specified file or one of its parents changed after accessRevision
+     */
+    public boolean isOutdated(String accessPath, long accessRevision) {
+        SvnPoller shared;
+        long head;
+
+        if (pinnedRevision != -1) {
+            return false;
+        }
+        try {
+            shared = getPoller();
+            head = shared.head();
+        } catch (SVNException e) {
+            return true;
+        }
+        return shared.isChanged(modulePath + "/" + accessPath, accessRevision, head);
+    }
+
     @Override
     protected SvnResource createResource(String resourcePath, SvnEntry entry) {
         if (lastModifiedRepository == -1) {
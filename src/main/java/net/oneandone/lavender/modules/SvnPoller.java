@@ -0,0 +1,294 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import net.oneandone.sushi.fs.svn.SvnFilesystem;
+import net.oneandone.sushi.fs.svn.SvnNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared by all svn modules of one repository: polls the head revision at most once per interval, remembers the paths changed
+ * by recent revisions, and pools repository sessions. Modules ask isChanged before they check their directory, so a refresh cycle
+ * over many modules of the same repository costs one getLatestRevision and one log instead of two round trips per module.
+ *
+ * Configured with system properties "lavender.svn.poll" (milliseconds) and "lavender.svn.sessions". Pollers are shared per
+ * repository root and credentials within this class loader, i.e. within one webapp. They are reference counted: every forRoot
+ * has to be balanced by a close, the last close closes the sessions. Thus a reloaded filter can share pollers with the filter
+ * it replaces.
+ */
+public class SvnPoller {
+    private static final Logger LOG = LoggerFactory.getLogger(SvnPoller.class);
+
+    public static final String INTERVAL_PROPERTY = "lavender.svn.poll";
+    public static final String SESSIONS_PROPERTY = "lavender.svn.sessions";
+
+    /** older revisions are forgotten; modules that loaded before fall back to checking their directory */
+    private static final int MAX_HISTORY = 1000;
+
+    private static final Map<Key, SvnPoller> POLLERS = new HashMap<>();
+
+    /** @return the poller for the repository and credentials of the specified module root; created on first use. Close it when done. */
+    public static SvnPoller forRoot(SvnNode root) throws SVNException {
+        SVNRepository repository;
+        SVNURL url;
+
+        repository = root.getRoot().getRepository();
+        url = repository.getRepositoryRoot(true);
+        return forKey(new Key(url.toString(), repository.getLocation().getUserInfo(), repository.getAuthenticationManager()),
+                url, repository.getAuthenticationManager());
+    }
+
+    static SvnPoller forKey(Key key, SVNURL url, ISVNAuthenticationManager authenticationManager) {
+        SvnPoller result;
+
+        synchronized (POLLERS) {
+            result = POLLERS.get(key);
+            if (result == null) {
+                result = new SvnPoller(url, authenticationManager,
+                        Long.getLong(INTERVAL_PROPERTY, 5000), Integer.getInteger(SESSIONS_PROPERTY, 8));
+                POLLERS.put(key, result);
+            } else {
+                result.references++;
+            }
+        }
+        return result;
+    }
+
+    //--
+
+    private final SVNURL url;
+    private final ISVNAuthenticationManager authenticationManager;
+    /** milliseconds */
+    private final long interval;
+
+    private final Semaphore sessions;
+    private final ConcurrentLinkedQueue<SVNRepository> idle;
+    private volatile boolean closed;
+    /** guarded by POLLERS */
+    private int references;
+
+    /** guarded by this */
+    private long head;
+    private long lastPoll;
+    /** the changed paths of all revisions in (historyStart, head] */
+    private long historyStart;
+    private final NavigableMap<Long, Collection<SVNLogEntryPath>> history;
+
+    SvnPoller(SVNURL url, ISVNAuthenticationManager authenticationManager, long interval, int sessions) {
+        this.url = url;
+        this.authenticationManager = authenticationManager;
+        this.interval = interval;
+        this.sessions = new Semaphore(sessions);
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.closed = false;
+        this.references = 1;
+        this.head = -1;
+        this.lastPoll = 0;
+        this.historyStart = -1;
+        this.history = new TreeMap<>();
+    }
+
+    /**
+     * Blocks if all sessions are in use. Sessions are located at the repository root, i.e. they accept paths relative to the root
+     * and absolute repository paths. Callers have to release the session, and must not use it concurrently.
+     */
+    public SVNRepository acquire() throws SVNException {
+        SVNRepository result;
+
+        if (closed) {
+            throw new IllegalStateException("closed: " + url);
+        }
+        sessions.acquireUninterruptibly();
+        result = idle.poll();
+        if (result == null) {
+            try {
+                result = SvnFilesystem.repository(url, authenticationManager);
+            } catch (SVNException | RuntimeException e) {
+                sessions.release();
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    public void release(SVNRepository session) {
+        if (closed) {
+            session.closeSession();
+        } else {
+            idle.add(session);
+        }
+        sessions.release();
+    }
+
+    /**
+     * Drops a reference. The last one closes idle sessions, sessions in use are closed when they are released; the poller must not
+     * be used anymore.
+     */
+    public void close() {
+        SVNRepository session;
+
+        synchronized (POLLERS) {
+            if (--references > 0) {
+                return;
+            }
+            POLLERS.values().remove(this);
+        }
+        closed = true;
+        while ((session = idle.poll()) != null) {
+            session.closeSession();
+        }
+    }
+
+    /**
+     * @return the latest revision of the repository, polled at most once per interval; concurrent callers wait for the
+     * poll in progress instead of starting their own
+     */
+    public synchronized long head() throws SVNException {
+        long now;
+        long latest;
+        SVNRepository session;
+
+        now = System.currentTimeMillis();
+        if (head != -1 && now - lastPoll < interval) {
+            return head;
+        }
+        session = acquire();
+        try {
+            latest = session.getLatestRevision();
+            if (latest != head) {
+                update(session, latest);
+            }
+        } finally {
+            release(session);
+        }
+        lastPoll = now;
+        return head;
+    }
+
+    private void update(SVNRepository session, long latest) {
+        List<SVNLogEntry> log;
+
+        log = new ArrayList<>();
+        if (head != -1 && latest > head) {
+            try {
+                session.log(new String[] { "" }, head + 1, latest, true, false, MAX_HISTORY + 1, log::add);
+            } catch (SVNException e) {
+                LOG.warn(url + ": svn log failed, modules will check their directories: " + e.getMessage());
+                log = null;
+            }
+        } else {
+            log = null;
+        }
+        record(latest, log);
+    }
+
+    /** @param log changes of all revisions after head, up to latest; null if unknown */
+    synchronized void record(long latest, List<SVNLogEntry> log) {
+        if (log == null || log.size() > MAX_HISTORY) {
+            history.clear();
+            historyStart = latest;
+        } else {
+            for (SVNLogEntry entry : log) {
+                history.put(entry.getRevision(), new ArrayList<>(entry.getChangedPaths().values()));
+            }
+            while (history.size() > MAX_HISTORY) {
+                historyStart = history.pollFirstEntry().getKey();
+            }
+        }
+        head = latest;
+    }
+
+    /**
+     * @param path absolute repository path of a module directory, without trailing slash
+     * @return true if a revision in (since, until] might have changed the specified path, i.e. modified something at or below
+     * it, or deleted, copied or replaced one of its parents. Also true if these revisions are not known.
+     */
+    public synchronized boolean isChanged(String path, long since, long until) {
+        String changed;
+
+        if (since < historyStart || until > head) {
+            return true;
+        }
+        for (Collection<SVNLogEntryPath> changes : history.subMap(since, false, until, true).values()) {
+            for (SVNLogEntryPath change : changes) {
+                changed = change.getPath();
+                if (changed.equals(path) || changed.startsWith(path + "/")) {
+                    return true;
+                }
+                if (path.startsWith(changed + "/") && change.getType() != SVNLogEntryPath.TYPE_MODIFIED) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized String toString() {
+        return url + ": head " + head + ", " + history.size() + " revisions known, " + sessions.availablePermits() + " sessions available";
+    }
+
+    //--
+
+    /**
+     * Repository root and credentials. Credentials in the url get an authentication manager per module root, so they are compared
+     * by user info; otherwise the authentication manager is compared by identity.
+     */
+    static class Key {
+        private final String url;
+        private final String userInfo;
+        private final ISVNAuthenticationManager authenticationManager;
+
+        Key(String url, String userInfo, ISVNAuthenticationManager authenticationManager) {
+            this.url = url;
+            this.userInfo = userInfo;
+            this.authenticationManager = userInfo == null ? authenticationManager : null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Key key;
+
+            if (obj instanceof Key) {
+                key = (Key) obj;
+                return url.equals(key.url) && Objects.equals(userInfo, key.userInfo) && authenticationManager == key.authenticationManager;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode() * 31 + Objects.hashCode(userInfo) * 17 + System.identityHashCode(authenticationManager);
+        }
+    }
+}
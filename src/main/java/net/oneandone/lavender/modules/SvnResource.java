@@ -46,12 +46,7 @@ public class SvnResource extends Resource {
     }
 
     public boolean isOutdated() {
-        try {
-            return entry.revision == module.getRoot().join(entry.accessPath).getLatestRevision();
-        } catch (SVNException e) {
-            // not found
-            return true;
-        }
+        return module.isOutdated(entry.accessPath, accessRevision);
     }
 
     public String getOrigin() {
@@ -59,12 +54,18 @@ public class SvnResource extends Resource {
     }
 
     public void writeTo(OutputStream dest) throws IOException {
+        SvnPoller poller;
         SVNRepository repository;
         long loaded;
 
-        repository = module.getRoot().getRoot().getRepository();
         try {
-            loaded = repository.getFile(module.getRoot().join(entry.accessPath).getPath(), accessRevision, null, dest);
+            poller = module.getPoller();
+            repository = poller.acquire();
+            try {
+                loaded = repository.getFile(module.getRoot().join(entry.accessPath).getPath(), accessRevision, null, dest);
+            } finally {
+                poller.release(repository);
+            }
         } catch (SVNException e) {
             throw new IOException("svn failure: " + e.getMessage(), e);
         }
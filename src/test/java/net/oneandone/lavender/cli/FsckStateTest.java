@@ -0,0 +1,66 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.cli;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FsckStateTest {
+    private static final World WORLD = World.createMinimal();
+
+    @Test
+    public void incremental() throws IOException {
+        FileNode file;
+        FsckState state;
+
+        file = WORLD.getTemp().createTempDirectory().join("host", "docroot.state");
+        state = FsckState.loadOrCreate(file);
+        assertEquals("app/a b.png", state.stat("12 1600000000.5 app/a b.png"));
+        assertEquals("app/c.png", state.stat("13 1600000000.5 app/c.png"));
+        assertFalse(state.isVerified("app/a b.png"));
+        state.verified("app/a b.png", 1);
+        state.verified("app/c.png", 1);
+        state.broken("app/c.png");
+        state.save();
+
+        state = FsckState.loadOrCreate(file);
+        state.stat("12 1600000000.5 app/a b.png");
+        state.stat("13 1600000000.5 app/c.png");
+        assertTrue(state.isVerified("app/a b.png"));
+        assertFalse(state.isVerified("app/c.png"));
+        assertEquals(1, state.size());
+
+        state = FsckState.loadOrCreate(file);
+        state.stat("12 1600000001.5 app/a b.png");
+        assertFalse(state.isVerified("app/a b.png"), "modified");
+        assertEquals(0, state.size());
+    }
+
+    @Test
+    public void encode() {
+        assertEquals("app/a.png", FsckState.encode("app/a.png"));
+        assertEquals("a%20b%25c%0a", FsckState.encode("a b%c\n"));
+        assertEquals("a b%c\n", FsckState.decode("a%20b%25c%0a"));
+        assertEquals("app/a.png", FsckState.decode("app/a.png"));
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LineOutputStreamTest {
+    @Test
+    public void lines() throws IOException {
+        List<String> lines;
+
+        lines = new ArrayList<>();
+        try (LineOutputStream dest = new LineOutputStream(lines::add)) {
+            dest.write("./a\n\n  b \r\n".getBytes(StandardCharsets.UTF_8));
+            dest.write('c');
+            dest.write("\u00e4\nlast".getBytes(StandardCharsets.UTF_8));
+            assertEquals(Arrays.asList("./a", "b", "c\u00e4"), lines);
+        }
+        assertEquals(Arrays.asList("./a", "b", "c\u00e4", "last"), lines);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IndexWatcherTest {
+    @Test
+    public void watch() throws IOException, InterruptedException {
+        Path dir;
+        AtomicInteger count;
+
+        dir = Files.createTempDirectory("watcher");
+        count = new AtomicInteger();
+        try (IndexWatcher watcher = new IndexWatcher(dir, Arrays.asList("a.idx", "a.nodes"), count::incrementAndGet)) {
+            Files.write(dir.resolve("other"), "x".getBytes());
+            Thread.sleep(IndexWatcher.QUIET * 2);
+            assertEquals(0, count.get(), "unrelated file");
+
+            Files.write(dir.resolve("a.idx"), "1".getBytes());
+            Files.write(dir.resolve("a.nodes"), "2".getBytes());
+            Files.write(dir.resolve("a.idx"), "3".getBytes());
+            for (int i = 0; i < 100 && count.get() == 0; i++) {
+                Thread.sleep(100);
+            }
+            Thread.sleep(IndexWatcher.QUIET * 2);
+            assertEquals(1, count.get(), "changes are combined");
+        } finally {
+            for (String name : new String[] { "other", "a.idx", "a.nodes" }) {
+                Files.deleteIfExists(dir.resolve(name));
+            }
+            Files.delete(dir);
+        }
+    }
+}
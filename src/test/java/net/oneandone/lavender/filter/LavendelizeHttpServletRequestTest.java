@@ -17,12 +17,18 @@ package net.oneandone.lavender.filter;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -31,6 +37,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class LavendelizeHttpServletRequestTest {
@@ -83,4 +92,87 @@ public class LavendelizeHttpServletRequestTest {
         assertFalse(headerNames.hasMoreElements());
     }
 
+    @Test
+    public void testAsyncComplete() {
+        AsyncContext original;
+        AsyncContext context;
+        AtomicInteger completed;
+
+        original = mock(AsyncContext.class);
+        when(wrappedRequest.startAsync()).thenReturn(original);
+        when(wrappedRequest.getAsyncContext()).thenReturn(original);
+        assertSame(original, request.startAsync());
+
+        completed = new AtomicInteger();
+        request.setAsyncCompletion(new LavendelizeAsyncContext.Once(completed::incrementAndGet), mock(HttpServletResponse.class));
+        context = request.startAsync();
+        assertSame(context, request.getAsyncContext());
+        assertEquals(0, completed.get());
+        context.complete();
+        context.complete();
+        assertEquals(1, completed.get());
+        verify(original, times(2)).complete();
+    }
+
+    @Test
+    public void testAsyncTimeout() throws IOException {
+        AsyncContext original;
+        ArgumentCaptor<AsyncListener> listener;
+        AtomicInteger completed;
+
+        original = mock(AsyncContext.class);
+        when(wrappedRequest.startAsync()).thenReturn(original);
+        completed = new AtomicInteger();
+        request.setAsyncCompletion(new LavendelizeAsyncContext.Once(completed::incrementAndGet), mock(HttpServletResponse.class));
+        request.startAsync();
+        listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(original).addListener(listener.capture());
+
+        listener.getValue().onTimeout(null);
+        assertEquals(1, completed.get(), "timeout completes the lavendelized response");
+        listener.getValue().onComplete(null);
+        assertEquals(1, completed.get());
+        verify(original, never()).complete();
+    }
+
+    @Test
+    public void testAsyncDispatch() throws IOException {
+        AsyncContext original;
+        ArgumentCaptor<AsyncListener> listener;
+        AtomicInteger completed;
+
+        original = mock(AsyncContext.class);
+        when(wrappedRequest.startAsync()).thenReturn(original);
+        completed = new AtomicInteger();
+        request.setAsyncCompletion(new LavendelizeAsyncContext.Once(completed::incrementAndGet), mock(HttpServletResponse.class));
+        request.startAsync().dispatch();
+        listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(original).addListener(listener.capture());
+        assertEquals(0, completed.get());
+        listener.getValue().onComplete(null);
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void testAsyncGetResponse() {
+        AsyncContext original;
+        HttpServletResponse lavenderResponse;
+        HttpServletResponse explicitResponse;
+        AsyncContext context;
+
+        original = mock(AsyncContext.class);
+        lavenderResponse = mock(HttpServletResponse.class);
+        explicitResponse = mock(HttpServletResponse.class);
+        when(wrappedRequest.startAsync()).thenReturn(original);
+        when(original.getResponse()).thenReturn(mock(HttpServletResponse.class));
+        request.setAsyncCompletion(new LavendelizeAsyncContext.Once(() -> { }), lavenderResponse);
+        context = request.startAsync();
+        assertSame(lavenderResponse, context.getResponse());
+        assertSame(request, context.getRequest());
+
+        original = mock(AsyncContext.class);
+        when(wrappedRequest.startAsync(request, explicitResponse)).thenReturn(original);
+        when(original.getResponse()).thenReturn(explicitResponse);
+        assertSame(explicitResponse, request.startAsync(request, explicitResponse).getResponse());
+    }
 }
@@ -26,9 +26,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -132,6 +138,70 @@ public class LavenderTest {
         verify(developmentFilterMock, times(1)).init(any());
     }
 
+    @Test
+    public void reloadDestroysAfterRequestsInProgress() throws Exception {
+        BlockingFilter first;
+        BlockingFilter second;
+        Lavender lavender;
+        Thread request;
+
+        first = new BlockingFilter();
+        second = new BlockingFilter();
+        lavender = new Lavender() {
+            @Override
+            Filter createDevelopmentFilter() {
+                return first.inits == 0 ? first : second;
+            }
+        };
+        lavender.init(filterConfig);
+        request = new Thread(() -> {
+            try {
+                lavender.doFilter(null, null, null);
+            } catch (IOException | ServletException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        request.setDaemon(true);
+        request.start();
+        first.entered.await();
+        lavender.reload();
+        assertEquals(1, second.inits);
+        assertFalse(first.destroyed);
+        first.leave.countDown();
+        request.join(5000);
+        assertTrue(first.destroyed);
+        assertFalse(second.destroyed);
+        lavender.destroy();
+        assertTrue(second.destroyed);
+    }
+
+    private static class BlockingFilter implements Filter {
+        public final CountDownLatch entered = new CountDownLatch(1);
+        public final CountDownLatch leave = new CountDownLatch(1);
+        public volatile int inits;
+        public volatile boolean destroyed;
+
+        @Override
+        public void init(FilterConfig config) {
+            inits++;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+            entered.countDown();
+            try {
+                leave.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+    }
+
     private void givenFile(String filename, String... lines) throws IOException {
         FileNode file = lavenderRoot.join(filename);
         file.mkfile();
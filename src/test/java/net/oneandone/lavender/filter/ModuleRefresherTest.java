@@ -0,0 +1,101 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import net.oneandone.lavender.modules.Module;
+import net.oneandone.lavender.modules.NodeModule;
+import net.oneandone.sushi.fs.Node;
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.filter.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModuleRefresherTest {
+    private static World WORLD;
+
+    static {
+        try {
+            WORLD = World.create(false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void disabled() {
+        Module<?> module;
+
+        module = new CountingModule();
+        try (ModuleRefresher refresher = new ModuleRefresher(Collections.singletonList(module), Collections.singletonMap(ModuleRefresher.NODE, 0))) {
+            assertEquals(ModuleRefresher.NODE, ModuleRefresher.type(module));
+            assertFalse(refresher.isRefreshed(module));
+            assertEquals(0, refresher.getScans().length);
+        }
+    }
+
+    @Test
+    public void refresh() throws Exception {
+        CountingModule module;
+
+        module = new CountingModule();
+        try (ModuleRefresher refresher = new ModuleRefresher(Collections.singletonList(module), Collections.singletonMap(ModuleRefresher.NODE, 1))) {
+            assertTrue(refresher.isRefreshed(module));
+            Thread.sleep(1500);
+            assertEquals(0, module.loads.get(), "unused modules are not refreshed");
+
+            assertNotNull(module.probe("a.png"));
+            assertNull(module.probe("b.png"));
+            assertEquals(1, module.loads.get());
+            for (int i = 0; i < 50 && module.loads.get() < 2; i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(module.loads.get() >= 2);
+            assertNotNull(module.probe("b.png"));
+            assertTrue(refresher.getScans()[0].startsWith("counting (node, every 1s): "));
+        }
+    }
+
+    private static class CountingModule extends NodeModule {
+        public final AtomicInteger loads = new AtomicInteger();
+
+        CountingModule() {
+            super("mem://counting", Module.TYPE, "counting", false, "", "", new Filter().includeAll());
+        }
+
+        @Override
+        protected Map<String, Node> loadEntries() {
+            Map<String, Node> result;
+
+            result = new HashMap<>();
+            result.put("a.png", WORLD.memoryNode("a"));
+            if (loads.incrementAndGet() > 1) {
+                result.put("b.png", WORLD.memoryNode("b"));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PreloadHintsTest {
+    @Test
+    public void record() {
+        PreloadHints hints;
+        PreloadHints.Recorder recorder;
+
+        hints = new PreloadHints(10);
+        assertTrue(hints.get("/page").isEmpty());
+        recorder = hints.recorder("/page");
+        recorder.accept("https://s1.cdn.net:8080/a.css", "style");
+        recorder.accept("https://s2.cdn.net/b.js", "script");
+        recorder.accept("https://s1.cdn.net:8080/c.js", "script");
+        recorder.done();
+        assertEquals(Arrays.asList(
+                "<https://s1.cdn.net:8080>; rel=preconnect",
+                "<https://s2.cdn.net>; rel=preconnect",
+                "<https://s1.cdn.net:8080/a.css>; rel=preload; as=style",
+                "<https://s2.cdn.net/b.js>; rel=preload; as=script",
+                "<https://s1.cdn.net:8080/c.js>; rel=preload; as=script"), hints.get("/page"));
+
+        hints.recorder("/page").done();
+        assertEquals(Collections.emptyList(), hints.get("/page"));
+    }
+
+    @Test
+    public void bounded() {
+        PreloadHints hints;
+        PreloadHints.Recorder recorder;
+
+        hints = new PreloadHints(2);
+        for (String path : new String[] { "/a", "/b", "/c" }) {
+            recorder = hints.recorder(path);
+            for (int i = 0; i < PreloadHints.MAX_ASSETS + 5; i++) {
+                recorder.accept("/x" + i + ".js", "script");
+            }
+            recorder.done();
+        }
+        assertEquals(2, hints.size());
+        assertTrue(hints.get("/a").isEmpty());
+        assertEquals(PreloadHints.MAX_ASSETS, hints.get("/c").size());
+    }
+
+    @Test
+    public void key() {
+        PreloadHints hints;
+        PreloadHints.Recorder recorder;
+
+        hints = new PreloadHints(10);
+        recorder = hints.recorder(PreloadHints.key("http", "/page", false));
+        recorder.accept("http://s1.cdn.net/a.css", "style");
+        recorder.done();
+        assertEquals(2, hints.get(PreloadHints.key("http", "/page", false)).size());
+        assertTrue(hints.get(PreloadHints.key("https", "/page", false)).isEmpty());
+        assertTrue(hints.get(PreloadHints.key("http", "/page", true)).isEmpty());
+    }
+
+    @Test
+    public void origin() {
+        assertEquals("http://host", PreloadHints.origin("http://host/a.png"));
+        assertEquals("http://host:81", PreloadHints.origin("http://host:81"));
+        assertNull(PreloadHints.origin("/a.png"));
+    }
+}
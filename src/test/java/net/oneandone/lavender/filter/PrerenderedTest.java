@@ -0,0 +1,151 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import net.oneandone.lavender.filter.processor.LavenderProcessorFactory;
+import net.oneandone.sushi.fs.Node;
+import net.oneandone.sushi.fs.World;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrerenderedTest {
+    @Test
+    public void contentType() {
+        assertEquals("text/html", Prerendered.contentType("index.html"));
+        assertEquals("text/html", Prerendered.contentType("a/B.HTM"));
+        assertEquals("text/css", Prerendered.contentType("css/main.css"));
+        assertNull(Prerendered.contentType("WEB-INF/a.html"));
+        assertNull(Prerendered.contentType("img/a.png"));
+    }
+
+    @Test
+    public void normalizeContextPath() {
+        assertEquals("/", Prerendered.normalizeContextPath(""));
+        assertEquals("/", Prerendered.normalizeContextPath("/"));
+        assertEquals("/ctx/", Prerendered.normalizeContextPath("ctx"));
+        assertEquals("/ctx/", Prerendered.normalizeContextPath("/ctx/"));
+    }
+
+    @Test
+    public void render() throws IOException {
+        LavenderProcessorFactory factory;
+
+        factory = new LavenderProcessorFactory((reference, baseURI, contextPath) ->
+                reference.endsWith(".png") ? baseURI.getScheme() + "://cdn" + contextPath + reference : reference, 0);
+        assertEquals("<img src=\"http://cdn/ctx/a.png\">", Prerendered.render(factory, "http", "/ctx/", "index.html", "<img src=\"a.png\">"));
+        assertEquals("a { background: url(https://cdn/ctx/b.png) }",
+                Prerendered.render(factory, "https", "/ctx/", "css/main.css", "a { background: url(b.png) }"));
+    }
+
+    @Test
+    public void manifest() throws IOException {
+        Node webapp;
+        Prerendered prerendered;
+
+        webapp = World.create(false).getTemp().createTempDirectory();
+        assertNull(Prerendered.loadOpt(webapp));
+        webapp.join(Prerendered.MANIFEST).getParent().mkdirs();
+        webapp.join(Prerendered.MANIFEST).writeString(Prerendered.manifest("/ctx/", Arrays.asList("index.html", "css/main.css")));
+        prerendered = Prerendered.loadOpt(webapp);
+        assertEquals("/ctx/", prerendered.getContextPath());
+        assertEquals(2, prerendered.getPaths().size());
+
+        assertEquals("index.html", prerendered.lookup(request("GET", "/ctx", "/ctx/index.html")));
+        assertEquals("css/main.css", prerendered.lookup(request("HEAD", "/ctx", "/ctx/css/main.css")));
+        assertNull(prerendered.lookup(request("POST", "/ctx", "/ctx/index.html")));
+        assertNull(prerendered.lookup(request("GET", "", "/index.html")));
+        assertNull(prerendered.lookup(request("GET", "/ctx", "/ctx/other.html")));
+        assertNull(prerendered.lookup(request("GET", "/ctx", "/ctx/index.html;jsessionid=1")));
+        webapp.deleteTree();
+    }
+
+    @Test
+    public void doFilter() throws Exception {
+        Node webapp;
+        Prerendered prerendered;
+        HttpServletRequest request;
+        HttpServletResponse response;
+        ByteArrayOutputStream body;
+
+        webapp = World.create(false).getTemp().createTempDirectory();
+        webapp.join(Prerendered.MANIFEST).getParent().mkdirs();
+        webapp.join(Prerendered.MANIFEST).writeString(Prerendered.manifest("/ctx/", Arrays.asList("index.html")));
+        webapp.join(Prerendered.DIR, "http", "index.html").getParent().mkdirs();
+        webapp.join(Prerendered.DIR, "http", "index.html").writeString("prerendered");
+        prerendered = Prerendered.loadOpt(webapp);
+        request = request("GET", "/ctx", "/ctx/index.html");
+        when(request.getScheme()).thenReturn("http");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+
+        body = new ByteArrayOutputStream();
+        response = response(HttpServletResponse.SC_OK, body);
+        prerendered.doFilter("index.html", request, response, (req, res) -> {
+            res.setContentLength(8);
+            res.setHeader("Cache-Control", "max-age=60");
+            res.getWriter().write("original");
+            res.flushBuffer();
+        });
+        assertEquals("prerendered", body.toString("UTF-8"));
+        verify(response).setHeader("Cache-Control", "max-age=60");
+        verify(response, never()).setContentLength(8);
+        verify(response, never()).flushBuffer();
+
+        // e.g. rejected by a security filter
+        body = new ByteArrayOutputStream();
+        response = response(HttpServletResponse.SC_FORBIDDEN, body);
+        prerendered.doFilter("index.html", request, response, (req, res) -> ((HttpServletResponse) res).sendError(403));
+        verify(response).sendError(403);
+        assertEquals(0, body.size());
+        webapp.deleteTree();
+    }
+
+    private static HttpServletResponse response(int status, ByteArrayOutputStream body) throws IOException {
+        HttpServletResponse response;
+
+        response = mock(HttpServletResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+        return response;
+    }
+
+    private static HttpServletRequest request(String method, String contextPath, String uri) {
+        HttpServletRequest request;
+
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getContextPath()).thenReturn(contextPath);
+        when(request.getRequestURI()).thenReturn(uri);
+        return request;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProductionFilterTest {
+    private FileNode root;
+    private ProductionFilter filter;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        FilterConfig config;
+        ServletContext context;
+
+        root = World.create(false).getTemp().createTempDirectory();
+        root.join("WEB-INF").mkdir();
+        root.join(Lavender.LAVENDER_IDX).mkfile();
+        root.join(Lavender.LAVENDER_NODES).writeLines("http://s1.uicdn.net/m1", "https://s1.uicdn.net/m1");
+        config = mock(FilterConfig.class);
+        context = mock(ServletContext.class);
+        when(config.getServletContext()).thenReturn(context);
+        when(context.getRealPath("")).thenReturn(root.getAbsolute());
+        filter = new ProductionFilter();
+        filter.init(config);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        filter.destroy();
+        root.deleteTree();
+    }
+
+    @Test
+    public void asyncDispatch() throws Exception {
+        HttpServletRequest request;
+        HttpServletResponse response;
+        Map<String, Object> attributes;
+        AtomicBoolean asyncStarted;
+        StringWriter body;
+
+        attributes = new HashMap<>();
+        asyncStarted = new AtomicBoolean();
+        body = new StringWriter();
+        request = mock(HttpServletRequest.class);
+        when(request.getRequestURL()).thenAnswer(invocation -> new StringBuffer("http://localhost/page"));
+        when(request.getRequestURI()).thenReturn("/page");
+        when(request.getContextPath()).thenReturn("");
+        when(request.getProtocol()).thenReturn("HTTP/1.1");
+        when(request.getScheme()).thenReturn("http");
+        when(request.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]))
+                .when(request).setAttribute(anyString(), anyObject());
+        doAnswer(invocation -> attributes.remove(invocation.getArguments()[0])).when(request).removeAttribute(anyString());
+        when(request.isAsyncStarted()).thenAnswer(invocation -> asyncStarted.get());
+        when(request.startAsync()).thenAnswer(invocation -> {
+            asyncStarted.set(true);
+            return mock(AsyncContext.class);
+        });
+        response = mock(HttpServletResponse.class);
+        when(response.getContentType()).thenReturn("text/html;charset=UTF-8");
+        when(response.getCharacterEncoding()).thenReturn("UTF-8");
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        // the first pass ends within a tag
+        filter.doFilter(request, response, (req, res) -> {
+            res.getWriter().write("<html><a href=\"/a");
+            req.startAsync();
+        });
+        asyncStarted.set(false);
+        filter.doFilter(request, response, (req, res) -> res.getWriter().write(".png\">x</a></html>"));
+        assertEquals("<html><a href=\"/a.png\">x</a></html>", body.toString());
+        assertEquals(0, attributes.size());
+    }
+}
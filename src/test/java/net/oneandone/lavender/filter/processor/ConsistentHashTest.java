@@ -21,6 +21,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -115,4 +116,54 @@ public class ConsistentHashTest {
         }
         assertEquals(1000000, count);
     }
+
+    @Test
+    public void testSameAsCircle() {
+        byte[] md5;
+        Integer key;
+        SortedMap<Integer, String> tail;
+
+        for (int i = 0; i < 10000; i++) {
+            md5 = Util.md5(("" + i).getBytes());
+            key = ch.key(md5);
+            tail = ch.circle.tailMap(key);
+            assertEquals(ch.circle.get(tail.isEmpty() ? ch.circle.firstKey() : tail.firstKey()), ch.getNodeForHash(md5));
+        }
+    }
+
+    @Test
+    public void testWeights() {
+        Map<String, Double> shares;
+
+        ch = new ConsistentHash(200);
+        ch.addNode("n1", 3);
+        ch.addNode("n2");
+        assertEquals(800, ch.circle.size());
+        shares = ch.getShares();
+        assertEquals(0.75, shares.get("n1"), 0.05);
+        assertEquals(0.25, shares.get("n2"), 0.05);
+        ch.removeNode("n1");
+        assertEquals(200, ch.circle.size());
+        assertEquals(1.0, ch.getShares().get("n2"), 0.0001);
+    }
+
+    @Test
+    public void testBounded() {
+        ConsistentHash bounded;
+        Map<String, Double> shares;
+        double sum;
+
+        // few replicas to get an uneven distribution
+        ch = new ConsistentHash(2, new String[] { "n1", "n2", "n3", "n4" });
+        bounded = new ConsistentHash(2, 1.1, new String[] { "n1", "n2", "n3", "n4" });
+        assertTrue(ch.getShares().values().stream().anyMatch(share -> share > 0.25 * 1.1));
+        shares = bounded.getShares();
+        sum = 0;
+        for (double share : shares.values()) {
+            assertTrue(share <= 0.25 * 1.1 + 0.0001, shares.toString());
+            sum += share;
+        }
+        assertEquals(1.0, sum, 0.0001);
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHash(2, 0.5, new String[0]));
+    }
 }
@@ -22,6 +22,9 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Matchers.any;
@@ -377,8 +380,8 @@ public class HtmlProcessorTest {
     @Test
     public void testSpecialCharsInComment() throws IOException {
 
-        String input = "<script><!-- for(C=0;C<A.length;++C){}; - -> > --><img src=\"/a/b/c\">";
-        String expected = "<script><!-- for(C=0;C<A.length;++C){}; - -> > --><img src=\"http://a.b.c\">";
+        String input = "<script><!-- for(C=0;C<A.length;++C){}; - -> > --></script><img src=\"/a/b/c\">";
+        String expected = "<script><!-- for(C=0;C<A.length;++C){}; - -> > --></script><img src=\"http://a.b.c\">";
 
         processor.process(input, 0, input.length());
         processor.flush();
@@ -490,4 +493,127 @@ public class HtmlProcessorTest {
 
         assertEquals(expected, out.getBuffer().toString());
     }
+
+    @Test
+    public void testNamesIgnoreCase() throws IOException {
+        String input = "<IMG Src='/a/b/c'><Link REL='stylesheet' hRef='/a/b/c'><a DATA-LAVENDER-x='/a/b/c' data-lavender-y='/a/b/c'>";
+        String expected = "<IMG Src='http://a.b.c'><Link REL='stylesheet' hRef='http://a.b.c'><a DATA-LAVENDER-x='/a/b/c' data-lavender-y='http://a.b.c'>";
+
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(expected, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testUnknownTagsAndAttributes() throws IOException {
+        String input = "<div src='/a/b/c' class='x'><span href='/a/b/c'><imgx src='/a/b/c'><img srcx='/a/b/c' xsrc='/a/b/c'>";
+
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(input, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testCustomAttribute() throws IOException {
+        HtmlAttribute poster;
+
+        poster = name -> name.equals("poster");
+        processor = new HtmlProcessor(LavenderHtmlTag.values(), new HtmlAttribute[] { LavenderHtmlAttribute.SRC, poster },
+                new UrlRewriteMatcher[] { new UrlRewriteMatcher() {
+                    public boolean matches(HtmlElement htmlElement) {
+                        return "video".equals(htmlElement.getTag().getName()) || htmlElement.getTag() == LavenderHtmlTag.IMG;
+                    }
+
+                    public boolean ignoreValue(String value) {
+                        return false;
+                    }
+
+                    public HtmlAttribute getAttributeToRewrite() {
+                        return poster;
+                    }
+                }});
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> "http://a.b.c", URI.create("http://x.y.z"), "/");
+        processor.setWriter(out);
+        processor.process("<img poster='/a' src='/b'>", 0, 26);
+        processor.flush();
+
+        assertEquals("<img poster='http://a.b.c' src='/b'>", out.getBuffer().toString());
+    }
+
+    @Test
+    public void testScriptIsRawText() throws IOException {
+        String input = "<script>if (a<b && c > d) { x = \"<img src='/a/b/c'>\"; } // </scr</script\n><img src='/a/b/c'>"
+                + "<textarea><img src='/a/b/c'></TEXTAREA ><img src='/a/b/c'>";
+        String expected = "<script>if (a<b && c > d) { x = \"<img src='/a/b/c'>\"; } // </scr</script\n><img src='http://a.b.c'>"
+                + "<textarea><img src='/a/b/c'></TEXTAREA ><img src='http://a.b.c'>";
+
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(expected, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testScriptSplitAcrossChunks() throws IOException {
+        String input = "<script type='text/javascript'>a<b;</script><img src='/a/b/c'>";
+        String expected = "<script type='text/javascript'>a<b;</script><img src='http://a.b.c'>";
+
+        for (int i = 0; i < input.length(); i++) {
+            processor.process(input, i, 1);
+        }
+        processor.flush();
+
+        assertEquals(expected, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testStyleElement() throws IOException {
+        String input = "<style type='text/css'>a < b { background: url(/a/b/c); }</style><div style='x: url(/a/b/c)'>";
+        String expected = "<style type='text/css'>a < b { background: url(http://a.b.c); }</style><div style='x: url(http://a.b.c)'>";
+
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(expected, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testDocumentEndsInStyleUrl() throws IOException {
+        String input;
+
+        for (String end : new String[] { "", "</sty" }) {
+            setUp();
+            input = "<style>a { background: url(/a/b" + end;
+            processor.process(input, 0, input.length());
+            processor.close();
+            assertEquals(input, out.getBuffer().toString());
+        }
+    }
+
+    @Test
+    public void testTemplateIsHtml() throws IOException {
+        String input = "<template><img src='/a/b/c'></template>";
+        String expected = "<template><img src='http://a.b.c'></template>";
+
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(expected, out.getBuffer().toString());
+    }
+
+    @Test
+    public void testHeadListener() throws IOException {
+        List<String> assets;
+        String input = "<html><HEAD><link rel='stylesheet' href='/a.css'><link rel='icon' href='/i.png'><script src='/a.js'></script>"
+                + "<img src='/a.png'></head><body><script src='/b.js'></script></body></html>";
+
+        assets = new ArrayList<>();
+        ((HtmlProcessor) processor).setHeadListener((url, as) -> assets.add(as + " " + url));
+        processor.process(input, 0, input.length());
+        processor.flush();
+
+        assertEquals(Arrays.asList("style http://a.b.c", "script http://a.b.c"), assets);
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JsProcessorTest {
+    private StringWriter out;
+    private JsProcessor processor;
+
+    @BeforeEach
+    public void setUp() {
+        processor = new JsProcessor();
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> reference.startsWith("/img/") ? "http://cdn" + reference : reference,
+                URI.create("http://x.y.z"), "/");
+        out = new StringWriter();
+        processor.setWriter(out);
+    }
+
+    private void check(String expected, String input) throws IOException {
+        processor.process(input, 0, input.length());
+        processor.flush();
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void strings() throws IOException {
+        check("var a = 'http://cdn/img/a.png', b = \"http://cdn/img/b.png\", c = '/other/c.png', d = 'click';",
+                "var a = '/img/a.png', b = \"/img/b.png\", c = '/other/c.png', d = 'click';");
+    }
+
+    @Test
+    public void marker() throws IOException {
+        check("x = lavender( 'http://cdn/img/logo');", "x = lavender( '/img/logo');");
+    }
+
+    @Test
+    public void noRewrite() throws IOException {
+        check("a = '/img/a b.png' + '/img/a\\'.png' + `/img/a.png` + \"\";", "a = '/img/a b.png' + '/img/a\\'.png' + `/img/a.png` + \"\";");
+    }
+
+    @Test
+    public void quoted() throws IOException {
+        String str;
+
+        // like LavenderRewriteEngine for paths not in the index
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> UriHelper.removeLeadingTrailingQuotes(reference),
+                URI.create("http://x.y.z"), "/");
+        str = "a = \"'a.png'\" + '\"/img/b.png\"';";
+        check(str, str);
+    }
+
+    @Test
+    public void comments() throws IOException {
+        check("// '/img/a.png'\n/* '/img/b.png' **/ x = 'http://cdn/img/c.png';", "// '/img/a.png'\n/* '/img/b.png' **/ x = '/img/c.png';");
+    }
+
+    @Test
+    public void regex() throws IOException {
+        check("if (/'[/']/.test(s)) { return /\"/g; } x = a / 2 + 'http://cdn/img/a.png' / 'http://cdn/img/b.png';",
+                "if (/'[/']/.test(s)) { return /\"/g; } x = a / 2 + '/img/a.png' / '/img/b.png';");
+    }
+
+    @Test
+    public void division() throws IOException {
+        check("x = (a) / 2 / 'http://cdn/img/a.png'; y = b[1] / 'http://cdn/img/b.png';",
+                "x = (a) / 2 / '/img/a.png'; y = b[1] / '/img/b.png';");
+    }
+
+    @Test
+    public void increment() throws IOException {
+        check("x = a++ / b + 'http://cdn/img/a.png' / c; y = c-- / 2 + 'http://cdn/img/b.png' / 2; z = d + +e / 'http://cdn/img/c.png';",
+                "x = a++ / b + '/img/a.png' / c; y = c-- / 2 + '/img/b.png' / 2; z = d + +e / '/img/c.png';");
+    }
+
+    @Test
+    public void relativePaths() throws IOException {
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> "http://cdn/" + reference, URI.create("http://x.y.z"), "/");
+        check("a = 'img/a.png' + '../b.png' + lavender('http://cdn/img/c.png');", "a = 'img/a.png' + '../b.png' + lavender('img/c.png');");
+    }
+
+    @Test
+    public void template() throws IOException {
+        check("t = `a ${ f({ x: 'http://cdn/img/a.png' }) } '/img/b.png' ${`${'http://cdn/img/c.png'}`}`; u = 'http://cdn/img/d.png';",
+                "t = `a ${ f({ x: '/img/a.png' }) } '/img/b.png' ${`${'/img/c.png'}`}`; u = '/img/d.png';");
+    }
+
+    @Test
+    public void chunks() throws IOException {
+        String input;
+
+        input = "x = '/img/a.png'; // done\n";
+        for (int i = 0; i < input.length(); i++) {
+            processor.process(input, i, 1);
+        }
+        processor.flush();
+        assertEquals("x = 'http://cdn/img/a.png'; // done\n", out.toString());
+    }
+
+    @Test
+    public void reset() throws IOException {
+        processor.process("x = '/img/", 0, 10);
+        processor.reset();
+        out = new StringWriter();
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> "http://cdn" + reference, URI.create("http://x.y.z"), "/");
+        processor.setWriter(out);
+        check("y = 'http://cdn/img/a.png';", "y = '/img/a.png';");
+    }
+}
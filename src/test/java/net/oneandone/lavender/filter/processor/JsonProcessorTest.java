@@ -0,0 +1,129 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JsonProcessorTest {
+    private static final String KEYS_IN = "{\"img\": \"/img/a.png\", \"alt\": \"/img/b.png\", \"list\": {\"img\": [\"/img/c.png\", {\"x\": \"/img/d.png\"}]}}";
+    private static final String KEYS_OUT = "{\"img\": \"http://cdn/img/a.png\", \"alt\": \"/img/b.png\", \"list\": {\"img\": [\"http://cdn/img/c.png\", {\"x\": \"/img/d.png\"}]}}";
+
+    private static JsonProcessor processor(List<String> keys, StringWriter out) {
+        JsonProcessor processor;
+
+        processor = new JsonProcessor(keys);
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> reference.startsWith("/img/") ? "http://cdn" + reference : reference,
+                URI.create("http://x.y.z"), "/");
+        processor.setWriter(out);
+        return processor;
+    }
+
+    private static void check(String expected, List<String> keys, String input) throws IOException {
+        StringWriter out;
+        JsonProcessor processor;
+
+        out = new StringWriter();
+        processor = processor(keys, out);
+        processor.process(input, 0, input.length());
+        processor.flush();
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void keys() throws IOException {
+        check(KEYS_OUT, Collections.singletonList("img"), KEYS_IN);
+    }
+
+    @Test
+    public void all() throws IOException {
+        check("[\"http://cdn/img/a.png\", 1, true, null, \"click\", {\"/img/k.png\": \"http://cdn/img/v.png\"}]", Collections.emptyList(),
+                "[\"/img/a.png\", 1, true, null, \"click\", {\"/img/k.png\": \"/img/v.png\"}]");
+    }
+
+    @Test
+    public void escapes() throws IOException {
+        check("{\"img\": \"http://cdn/img/a.png\", \"img\": \"\\/img\\/b\\\".png\", \"img\": \"\\/other.png\", \"img\": \"\"}", Arrays.asList("img"),
+                "{\"img\": \"\\/img\\/a.png\", \"img\": \"\\/img\\/b\\\".png\", \"img\": \"\\/other.png\", \"img\": \"\"}");
+    }
+
+    @Test
+    public void noRewrite() throws IOException {
+        String str;
+
+        str = "{\"img\": \"/img/a b.png\", \"img\": \"/img/\u00e4.png\", \"img\": 12, \"other\": [\"/img/a.png\"]}";
+        check(str, Collections.singletonList("img"), str);
+    }
+
+    @Test
+    public void quoted() throws IOException {
+        StringWriter out;
+        JsonProcessor processor;
+        String str;
+
+        str = "[\"'a.png'\", {\"img\": \"'/img/b.png'\"}]";
+        for (List<String> keys : Arrays.asList(Collections.<String>emptyList(), Collections.singletonList("img"))) {
+            out = new StringWriter();
+            processor = new JsonProcessor(keys);
+            // like LavenderRewriteEngine for paths not in the index
+            processor.setRewriteEngine((reference, baseURI, contextPath) -> UriHelper.removeLeadingTrailingQuotes(reference),
+                    URI.create("http://x.y.z"), "/");
+            processor.setWriter(out);
+            processor.process(str, 0, str.length());
+            processor.flush();
+            assertEquals(str, out.toString());
+        }
+    }
+
+    @Test
+    public void chunks() throws IOException {
+        StringWriter out;
+        JsonProcessor processor;
+
+        out = new StringWriter();
+        processor = processor(Collections.singletonList("img"), out);
+        for (int i = 0; i < KEYS_IN.length(); i++) {
+            processor.process(KEYS_IN, i, 1);
+        }
+        processor.flush();
+        assertEquals(KEYS_OUT, out.toString());
+    }
+
+    @Test
+    public void reset() throws IOException {
+        StringWriter out;
+        JsonProcessor processor;
+
+        out = new StringWriter();
+        processor = processor(Collections.singletonList("img"), out);
+        processor.process("{\"img\": [\"/im", 0, 12);
+        processor.reset();
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> "http://cdn" + reference, URI.create("http://x.y.z"), "/");
+        out = new StringWriter();
+        processor.setWriter(out);
+        processor.process("[\"/img/a.png\"]", 0, 14);
+        processor.flush();
+        assertEquals("[\"/img/a.png\"]", out.toString());
+    }
+}
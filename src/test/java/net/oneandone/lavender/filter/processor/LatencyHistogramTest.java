@@ -0,0 +1,62 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets() {
+        long value;
+        int bucket;
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, LatencyHistogram.bucket(i));
+            assertEquals(i, LatencyHistogram.highest(i));
+        }
+        for (int shift = 4; shift < 62; shift++) {
+            for (long delta = -1; delta <= 1; delta++) {
+                value = (1L << shift) + delta;
+                bucket = LatencyHistogram.bucket(value);
+                assertTrue(LatencyHistogram.highest(bucket) >= value, Long.toString(value));
+                assertTrue(bucket == 0 || LatencyHistogram.highest(bucket - 1) < value, Long.toString(value));
+                assertTrue(LatencyHistogram.highest(bucket) - value <= value / 8, Long.toString(value));
+            }
+        }
+        assertEquals(0, LatencyHistogram.bucket(-5));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram;
+
+        histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(10000);
+        assertEquals(101, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(11, histogram.getPercentile(10));
+        assertTrue(Math.abs(histogram.getPercentile(50) - 51) <= 51 / 8);
+        assertEquals(10000, histogram.getPercentile(100));
+        assertTrue(histogram.toString().startsWith("p50="));
+    }
+}
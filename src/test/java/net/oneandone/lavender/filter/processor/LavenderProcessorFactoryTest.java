@@ -15,11 +15,23 @@
  */
 package net.oneandone.lavender.filter.processor;
 
+import net.oneandone.lavender.filter.ProductionFilter;
+import net.oneandone.lavender.index.Index;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class LavenderProcessorFactoryTest {
@@ -45,6 +57,49 @@ public class LavenderProcessorFactoryTest {
         assertTrue(cssProcessor instanceof CssProcessor);
     }
 
+    @Test
+    public void testJs() {
+        assertNull(processorFactory.createProcessor("text/javascript", null, "/"));
+        processorFactory = new LavenderProcessorFactory(null, 4, true);
+        assertTrue(processorFactory.createProcessor("text/javascript", null, "/") instanceof JsProcessor);
+        assertTrue(processorFactory.createProcessor("application/javascript", null, "/") instanceof JsProcessor);
+    }
+
+    @Test
+    public void testJson() {
+        assertNull(processorFactory.createProcessor("application/json", null, "/"));
+        assertNull(LavenderProcessorFactory.jsonKeys(" "));
+        assertEquals(Collections.emptyList(), LavenderProcessorFactory.jsonKeys("*"));
+        assertEquals(Arrays.asList("img", "src"), LavenderProcessorFactory.jsonKeys("img, src,"));
+        processorFactory = new LavenderProcessorFactory(null, 4, false, Collections.singletonList("img"));
+        assertTrue(processorFactory.createProcessor("application/json", null, "/") instanceof JsonProcessor);
+        assertNull(processorFactory.createProcessor("text/javascript", null, "/"));
+    }
+
+    @Test
+    public void testMultiplexed() {
+        LavenderRewriteEngine engine;
+        AbstractProcessor processor;
+
+        engine = new LavenderRewriteEngine(new Index());
+        engine.add(URI.create("http://s1.cdn.net/"));
+        processorFactory = new LavenderProcessorFactory(engine, 0);
+        assertFalse(processorFactory.hasSingleOrigin());
+        engine.setSingleOrigin(URI.create("http://all.cdn.net/"));
+        processorFactory = new LavenderProcessorFactory(engine, 0);
+        assertTrue(processorFactory.hasSingleOrigin());
+        processor = (AbstractProcessor) processorFactory.createProcessor("text/html", URI.create("http://localhost"), "/", false);
+        assertSame(engine, processor.rewriteEngine);
+        processor = (AbstractProcessor) processorFactory.createProcessor("text/html", URI.create("http://localhost"), "/", true);
+        assertNotSame(engine, processor.rewriteEngine);
+
+        assertTrue(ProductionFilter.isMultiplexed("HTTP/2.0"));
+        assertTrue(ProductionFilter.isMultiplexed("HTTP/3"));
+        assertFalse(ProductionFilter.isMultiplexed("HTTP/1.1"));
+        assertFalse(ProductionFilter.isMultiplexed("HTTP/"));
+        assertFalse(ProductionFilter.isMultiplexed(null));
+    }
+
     @Test
     public void testUnknownContentType() {
         Processor nullProcessor = processorFactory.createProcessor("image/png", null, "/");
@@ -63,4 +118,71 @@ public class LavenderProcessorFactoryTest {
         assertNull(nullProcessor);
     }
 
+    @Test
+    public void testPool() throws IOException {
+        Processor first;
+        Processor second;
+        StringWriter out;
+
+        processorFactory = new LavenderProcessorFactory(null, 4);
+        first = processorFactory.createProcessor("text/html", null, "/");
+        out = new StringWriter();
+        first.setWriter(out);
+        first.process("<div class='x", 0, 13);
+        first.close();
+        assertEquals("<div class='x", out.toString());
+
+        second = processorFactory.createProcessor("text/html", URI.create("http://x.y.z"), "/");
+        assertSame(first, second);
+        out = new StringWriter();
+        second.setRewriteEngine((reference, baseURI, contextPath) -> "http://a.b.c", URI.create("http://x.y.z"), "/");
+        second.setWriter(out);
+        second.process("<img src='/a'>", 0, 14);
+        second.close();
+        assertEquals("<img src='http://a.b.c'>", out.toString(), "state of the previous response is reset");
+        second.close();
+        assertNotSame(processorFactory.createProcessor("text/html", null, "/"), processorFactory.createProcessor("text/html", null, "/"),
+                "closing again does not return the processor twice");
+
+        assertEquals(4, processorFactory.getHtmlPool().getAcquired());
+        assertEquals(2, processorFactory.getHtmlPool().getHits());
+        assertEquals(0, processorFactory.getCssPool().getAcquired());
+    }
+
+    @Test
+    public void testPoolDisabled() throws IOException {
+        Processor first;
+
+        processorFactory = new LavenderProcessorFactory(null, 0);
+        first = processorFactory.createProcessor("text/css", null, "/");
+        first.setWriter(new StringWriter());
+        first.close();
+        assertNotSame(first, processorFactory.createProcessor("text/css", null, "/"));
+        assertEquals(0, processorFactory.getCssPool().getHits());
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        Processor processor;
+        RewriteMetrics.Counters html;
+        String input;
+
+        processorFactory = new LavenderProcessorFactory(null, 4);
+        processor = processorFactory.createProcessor("text/html", URI.create("http://x.y.z"), "/");
+        processor.setRewriteEngine((reference, baseURI, contextPath) -> reference.startsWith("/a") ? "http://a.b.c" : reference,
+                URI.create("http://x.y.z"), "/");
+        processor.setWriter(new StringWriter());
+        input = "<img src='/a'><img src='/b'><div style='background: url(/a)'>";
+        processor.process(input, 0, input.length());
+        processor.close();
+
+        html = processorFactory.getMetrics().get("text/html");
+        assertEquals(1, html.responses.sum());
+        assertEquals(input.length(), html.chars.sum());
+        assertEquals(2, html.rewrites.sum());
+        assertEquals(1, html.misses.sum());
+        assertEquals(1, html.latency.getCount());
+        assertEquals(0, processorFactory.getMetrics().get("text/css").responses.sum());
+        assertTrue(processorFactory.getMetrics().lines()[1].startsWith("text/html: 1 responses, " + input.length() + " chars, 2 rewrites, 1 misses"));
+    }
 }
@@ -22,10 +22,14 @@ import net.oneandone.lavender.index.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class LavenderRewriteEngineTest {
@@ -127,6 +131,45 @@ public class LavenderRewriteEngineTest {
         assertEquals("http://s1.uicdn.net:8080/m1/9a0364b9e99bb480dd25e1f0284c8555/logo.png", uri.toString());
     }
 
+    /** the fast path for plain references yields the same results as java.net.URI */
+    @Test
+    public void plainDifferential() {
+        Index index;
+        LavenderRewriteEngine engine;
+        String expected;
+        URI reference;
+        URI uri;
+        int rewritten;
+
+        index = new Index();
+        index.add(new Label("img/a.png", "m1/img/a.png", Util.md5((byte) 1)));
+        index.add(new Label("a.png", "m1/a b.png", Util.md5((byte) 2)));
+        index.add(new Label("app/a.png;p", "m1/ap.png", Util.md5((byte) 3)));
+        index.add(new Label("img", "m1/img", Util.md5((byte) 4)));
+        engine = new LavenderRewriteEngine(index);
+        engine.add(URI.create("http://s1.cdn.net:8080/x/"));
+        engine.add(URI.create("https://s1.cdn.net/y/"));
+        rewritten = 0;
+        for (String str : UriHelperTest.combinations(3)) {
+            for (String base : new String[] { "http://localhost/", "http://localhost/app/img/page.html", "https://localhost/app/" }) {
+                for (String context : new String[] { "/", "/app/" }) {
+                    try {
+                        reference = new URI(str);
+                        uri = engine.rewrite(reference, URI.create(base), context);
+                        expected = uri == reference ? str : uri.toASCIIString();
+                    } catch (URISyntaxException e) {
+                        expected = str;
+                    }
+                    assertEquals(expected, engine.rewrite(str, URI.create(base), context), str + " against " + base);
+                    if (!expected.equals(str)) {
+                        rewritten++;
+                    }
+                }
+            }
+        }
+        assertTrue(rewritten > 500, Integer.toString(rewritten));
+    }
+
     private LavenderRewriteEngine testRewriteStrategy() {
         LavenderRewriteEngine rewriteStrategy = new LavenderRewriteEngine(new Index());
 
@@ -137,4 +180,65 @@ public class LavenderRewriteEngineTest {
         return rewriteStrategy;
     }
 
+
+    @Test
+    public void loadWeights() throws IOException {
+        Index index;
+        LavenderRewriteEngine loaded;
+
+        index = new Index();
+        loaded = (LavenderRewriteEngine) LavenderRewriteEngine.load(index,
+                new ByteArrayInputStream("http://s1.cdn.net weight=3\nhttps://s1.cdn.net\n\nhttp://s2.cdn.net/\n".getBytes()));
+        assertEquals(0.75, loaded.getConsistentHash().getShares().get("s1.cdn.net"), 0.05);
+        assertThrows(IOException.class, () -> LavenderRewriteEngine.load(index, new ByteArrayInputStream("http://s1.cdn.net weight=0".getBytes())));
+        assertThrows(IOException.class, () -> LavenderRewriteEngine.load(index, new ByteArrayInputStream("http://s1.cdn.net foo".getBytes())));
+        assertThrows(IOException.class, () -> LavenderRewriteEngine.load(index,
+                new ByteArrayInputStream("http://s1.cdn.net\nhttps://s1.cdn.net weight=2".getBytes())));
+        assertThrows(IOException.class, () -> LavenderRewriteEngine.load(index,
+                new ByteArrayInputStream("http://s1.cdn.net\nhttp://all.cdn.net single weight=2".getBytes())));
+    }
+
+    @Test
+    public void singleOrigin() throws IOException {
+        Index index;
+        LavenderRewriteEngine sharded;
+        LavenderRewriteEngine single;
+
+        index = new Index();
+        index.add(new Label("in.jpg", "out.jpg", Util.md5()));
+        sharded = (LavenderRewriteEngine) LavenderRewriteEngine.load(index, new ByteArrayInputStream(
+                ("http://s1.cdn.net\nhttps://s1.cdn.net\nhttp://s2.cdn.net\nhttps://s2.cdn.net\nhttps://all.cdn.net single\n").getBytes()));
+        single = sharded.singleOrigin();
+        assertEquals("https://s1.cdn.net/out.jpg", sharded.rewrite("in.jpg", URI.create("https://localhost"), "/"));
+        assertEquals("https://all.cdn.net/out.jpg", single.rewrite("in.jpg", URI.create("https://localhost"), "/"));
+        assertEquals("https://all.cdn.net/out.jpg?a=1", single.rewrite("in.jpg?a=1", URI.create("https://localhost"), "/"));
+        assertEquals("https://all.cdn.net/out.jpg?a=%20", single.rewrite("in.jpg?a=%20", URI.create("https://localhost"), "/"));
+        // no single origin for http
+        assertEquals("http://s1.cdn.net/out.jpg", single.rewrite("in.jpg", URI.create("http://localhost"), "/"));
+        assertEquals(null, engine.singleOrigin());
+    }
+
+    @Test
+    public void singleOriginIsNotSharded() throws IOException {
+        Index index;
+        String nodes;
+        LavenderRewriteEngine without;
+        LavenderRewriteEngine with;
+        URI http;
+
+        index = new Index();
+        for (int i = 0; i < 100; i++) {
+            index.add(new Label("in" + i + ".jpg", "out" + i + ".jpg", Util.md5(Integer.toString(i).getBytes())));
+        }
+        nodes = "http://s1.cdn.net\nhttps://s1.cdn.net\nhttp://s2.cdn.net\nhttps://s2.cdn.net\n";
+        without = (LavenderRewriteEngine) LavenderRewriteEngine.load(index, new ByteArrayInputStream(nodes.getBytes()));
+        with = (LavenderRewriteEngine) LavenderRewriteEngine.load(index, new ByteArrayInputStream(
+                (nodes + "http://all.cdn.net single\n").getBytes()));
+        http = URI.create("http://localhost");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(without.rewrite("in" + i + ".jpg", http, "/"), with.rewrite("in" + i + ".jpg", http, "/"));
+        }
+        assertEquals("http://all.cdn.net/out1.jpg", with.singleOrigin().rewrite("in1.jpg", http, "/"));
+        assertEquals(without.getConsistentHash().getShares(), with.getConsistentHash().getShares());
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import net.oneandone.lavender.index.Index;
+import net.oneandone.lavender.index.Label;
+import net.oneandone.lavender.index.Util;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LookupFilterTest {
+    private static final URI BASE = URI.create("http://localhost:80/app/dir/page.html");
+
+    private static Index index() {
+        Index index;
+
+        index = new Index();
+        index.add(new Label("img/logo.png", "out/logo.png", Util.md5()));
+        index.add(new Label("dir/a b.png", "out/ab.png", Util.md5()));
+        index.add(new Label("js/Main.JS", "out/main.js", Util.md5()));
+        index.add(new Label("fonts/noext", "out/noext", Util.md5()));
+        return index;
+    }
+
+    @Test
+    public void rejects() {
+        LookupFilter filter;
+
+        filter = new LookupFilter(index());
+        assertFalse(filter.rejects("img/logo.png"));
+        assertFalse(filter.rejects("/app/img/logo.png?v=1#x"));
+        assertFalse(filter.rejects("http://localhost/other/logo.png"));
+        assertFalse(filter.rejects("../js/Main.JS"));
+        assertTrue(filter.rejects("/app/img/logo.gif"));
+        assertTrue(filter.rejects("/shop/cart.html"));
+        assertTrue(filter.rejects("mailto:someone@example.com"));
+        assertTrue(filter.rejects("javascript:void(0)"));
+
+        // the file name might change when resolved
+        assertFalse(filter.rejects(""));
+        assertFalse(filter.rejects("?page=2"));
+        assertFalse(filter.rejects("#top"));
+        assertFalse(filter.rejects("/shop/"));
+        assertFalse(filter.rejects("img/.."));
+        assertFalse(filter.rejects("a%20b.png"));
+        assertFalse(filter.rejects("\u00e4.html"));
+
+        assertEquals(15, filter.getChecked());
+        assertEquals(4, filter.getRejected());
+    }
+
+    @Test
+    public void engine() {
+        LavenderRewriteEngine engine;
+
+        engine = new LavenderRewriteEngine(index());
+        engine.add(URI.create("http://s1.cdn.net/"));
+        assertEquals("http://s1.cdn.net/out/logo.png", engine.rewrite("../img/logo.png", BASE, "/app/"));
+        assertEquals("/shop/cart.html", engine.rewrite("'/shop/cart.html'", BASE, "/app/"));
+        assertEquals("other/logo.png", engine.rewrite("other/logo.png", BASE, "/app/"));
+        assertEquals(2, engine.getLookupFilter().getChecked() - 1);
+        assertEquals(1, engine.getLookupFilter().getRejected());
+        assertEquals(1, engine.getLookupFilter().getFalsePositives());
+        assertTrue(engine.getLookupFilter().toString().startsWith("checked 3, rejected 1 (33%), false positives 1"));
+
+        // misses are returned unchanged, rejected or not
+        assertEquals("/shop/cart.gif?q=\u00e4", engine.rewrite("/shop/cart.gif?q=\u00e4", BASE, "/app/"));
+        assertEquals("\u00e4.html", engine.rewrite("\u00e4.html", BASE, "/app/"));
+        assertEquals(2, engine.getLookupFilter().getRejected());
+        assertEquals(2, engine.getLookupFilter().getFalsePositives());
+    }
+
+    /** rejected references must not be found when resolved the normal way */
+    @Test
+    public void differential() throws URISyntaxException {
+        String[] parts = { "", "/", "/", ".", "..", "img", "dir", "js", "fonts", "app", "logo.png", "logo.PNG", "a b.png", "a%20b.png",
+                "Main.JS", "main.js", "noext", "x.html", "?", "#", "v=1", "http://localhost:80", "//localhost", ";s=1", "." };
+        Index index;
+        LookupFilter filter;
+        LavenderRewriteEngine engine;
+        Random random;
+        StringBuilder builder;
+        String reference;
+        URI uri;
+        int rejected;
+
+        index = index();
+        filter = new LookupFilter(index);
+        engine = new LavenderRewriteEngine(index);
+        random = new Random(7);
+        rejected = 0;
+        for (int i = 0; i < 20000; i++) {
+            builder = new StringBuilder();
+            for (int j = random.nextInt(6); j >= 0; j--) {
+                builder.append(parts[random.nextInt(parts.length)]);
+            }
+            reference = builder.toString();
+            if (filter.rejects(reference)) {
+                rejected++;
+                try {
+                    uri = new URI(reference);
+                } catch (URISyntaxException e) {
+                    continue;
+                }
+                assertEquals(reference, uri.toASCIIString());
+                assertNull(engine.lookup(uri, BASE, "/app/"), reference);
+            }
+        }
+        assertTrue(rejected > 1000);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Compares the srcset parser of HtmlProcessor with the regex it replaced. */
+public class SrcsetTest {
+    /** The regex HtmlProcessor used before */
+    private static final Pattern SRCSET_PATTERN = Pattern.compile("([\\t\\n\\f\\r ]*)([^,\\t\\n\\f\\r ]+)([\\t\\n\\f\\r ]*)([^,]*)(,|$)");
+
+    private static final RewriteEngine ENGINE = (reference, baseURI, contextPath) -> "[" + reference + "]";
+
+    @Test
+    public void candidates() throws IOException {
+        check("a.png", "[a.png]");
+        check("a.png 1x", "[a.png] 1x");
+        check(" a.png 1x , b.png\t2x,\nc.png ", " [a.png] 1x , [b.png]\t2x,\n[c.png] ");
+        check("a.png 1x,, ,b.png", "[a.png] 1x,, ,[b.png]");
+        check("data:image/png;base64,AAAA 1x, b.png 2x", "data:image/png;base64,AAAA 1x, [b.png] 2x");
+        check("", "");
+        check(" , ", " , ");
+    }
+
+    @Test
+    public void whatwg() throws IOException {
+        // commas inside urls belong to the url; the regex split them
+        check("a,b.png 1x", "[a,b.png] 1x");
+        check("a.png,b.png 2x", "[a.png,b.png] 2x");
+        check("a.png 1x (x, y), b.png", "[a.png] 1x (x, y), [b.png]");
+        // no regex replacement syntax
+        check("a$1.png 1x", "[a$1.png] 1x");
+    }
+
+    @Test
+    public void differential() throws IOException {
+        Random random;
+        String[] urls = { "/img/a.png", "x/y-z_1.jpg?v=2", "data:AAAA", "//cdn.example.com/x.webp", "../b.gif#f" };
+        String[] descriptors = { "", "640w", "2.0x", "1x", "100h" };
+        String[] spaces = { "", " ", "\t", "\n ", "  " };
+        StringBuilder srcset;
+        int count;
+
+        random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            srcset = new StringBuilder();
+            count = random.nextInt(30);
+            for (int c = 0; c < count; c++) {
+                if (c > 0) {
+                    srcset.append(',');
+                }
+                srcset.append(pick(random, spaces));
+                srcset.append(pick(random, urls));
+                srcset.append(' ');
+                srcset.append(pick(random, spaces));
+                srcset.append(pick(random, descriptors));
+                srcset.append(pick(random, spaces));
+            }
+            assertEquals(legacy(srcset.toString()), rewrite(srcset.toString()), srcset.toString());
+        }
+    }
+
+    private static String pick(Random random, String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private static void check(String srcset, String expected) throws IOException {
+        assertEquals(expected, rewrite(srcset));
+    }
+
+    private static String rewrite(String srcset) throws IOException {
+        HtmlProcessor processor;
+        StringWriter out;
+        String html;
+
+        processor = new HtmlProcessor();
+        processor.setRewriteEngine(ENGINE, URI.create("http://x.y.z"), "/");
+        out = new StringWriter();
+        processor.setWriter(out);
+        html = "<img srcset='" + srcset + "'>";
+        processor.process(html, 0, html.length());
+        processor.flush();
+        html = out.toString();
+        return html.substring(13, html.length() - 2);
+    }
+
+    private static String legacy(String attributeValue) {
+        Matcher elements = SRCSET_PATTERN.matcher(attributeValue);
+        StringBuffer replacement = new StringBuffer();
+        while (elements.find()) {
+            String url = elements.group(2);
+            if (!url.startsWith("data:")) {
+                url = ENGINE.rewrite(url, null, "/");
+            }
+            elements.appendReplacement(replacement, elements.group(1) + url + elements.group(3) + elements.group(4) + elements.group(5));
+        }
+        elements.appendTail(replacement);
+        return replacement.toString();
+    }
+}
@@ -18,9 +18,13 @@ package net.oneandone.lavender.filter.processor;
 import org.junit.jupiter.api.Test;
 
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class UriHelperTest {
 
@@ -64,6 +68,84 @@ public class UriHelperTest {
         assertEquals("img/close.gif", doResolve("../img/close.gif", "http://localhost:80/app/img/", "/app/"));
     }
 
+    @Test
+    public void plainPathEnd() {
+        assertEquals(5, UriHelper.plainPathEnd("a.png"));
+        assertEquals(6, UriHelper.plainPathEnd("/a.png?x=1#y"));
+        assertEquals(8, UriHelper.plainPathEnd("../a.png#"));
+        assertEquals(-1, UriHelper.plainPathEnd(""));
+        assertEquals(-1, UriHelper.plainPathEnd("?x"));
+        assertEquals(-1, UriHelper.plainPathEnd("http://host/a.png"));
+        assertEquals(-1, UriHelper.plainPathEnd("//host/a.png"));
+        assertEquals(-1, UriHelper.plainPathEnd("a%20.png"));
+        assertEquals(-1, UriHelper.plainPathEnd("a b.png"));
+        assertEquals(-1, UriHelper.plainPathEnd("a.png?x#y#z"));
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals("/a/b", UriHelper.normalize("/a/b"));
+        assertEquals("/a/c", UriHelper.normalize("/a/./b/../c"));
+        assertEquals("/a/", UriHelper.normalize("/a/b/.."));
+        assertEquals("/a/", UriHelper.normalize("/a/."));
+        assertEquals("b", UriHelper.normalize("./a/../b"));
+        assertEquals("a./b..", UriHelper.normalize("a./b.."));
+        assertNull(UriHelper.normalize("/../a"));
+        assertNull(UriHelper.normalize("../a"));
+        assertNull(UriHelper.normalize("/a//b"));
+    }
+
+    private static final String[] PARTS = { "", "/", ".", "..", "./", "../", "app", "app/", "img", "a.png", "a b", "%20", ":",
+            "x:y", "//", "?", "?q=1", "#", "#f", "&", ";p", "~" };
+
+    private static final String[] BASES = { "http://localhost:80", "http://localhost:80/", "http://localhost/app/",
+            "http://localhost/app/img/page.html?x=1", "https://localhost/app/a/b/c", "http://localhost/app/%7Euser/", "http://localhost/app//x/" };
+
+    /** compares resolvePlainPathWithoutContext with the java.net.URI based implementation for all combinations of up to 3 parts */
+    @Test
+    public void plainDifferential() throws URISyntaxException {
+        String plain;
+        URI reference;
+        int count;
+
+        count = 0;
+        for (String str : combinations(3)) {
+            for (String base : BASES) {
+                for (String context : new String[] { "/", "/app/" }) {
+                    if (UriHelper.plainPathEnd(str) == -1) {
+                        continue;
+                    }
+                    plain = UriHelper.resolvePlainPathWithoutContext(str, UriHelper.plainPathEnd(str), URI.create(base), context);
+                    if (plain == null) {
+                        continue;
+                    }
+                    reference = new URI(str);
+                    assertEquals(doResolve(reference.toString(), base, context), plain, str + " against " + base);
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 10000, Integer.toString(count));
+    }
+
+    static List<String> combinations(int depth) {
+        List<String> result;
+        List<String> next;
+
+        result = new ArrayList<>();
+        result.add("");
+        for (int i = 0; i < depth; i++) {
+            next = new ArrayList<>();
+            for (String prefix : result) {
+                for (String part : PARTS) {
+                    next.add(prefix + part);
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
     private String doResolve(String reference, String baseUri, String contextPath) {
         return UriHelper.resolvePathWithoutContext(URI.create(reference), URI.create(baseUri), contextPath);
     }
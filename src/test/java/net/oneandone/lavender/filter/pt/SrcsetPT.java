@@ -0,0 +1,103 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.filter.pt;
+
+import net.oneandone.lavender.filter.processor.HtmlProcessor;
+import net.oneandone.lavender.filter.processor.RewriteEngine;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Srcset-heavy page: HtmlProcessor vs. the regex it used before */
+@Disabled
+public class SrcsetPT {
+    private static final Pattern SRCSET_PATTERN = Pattern.compile("([\\t\\n\\f\\r ]*)([^,\\t\\n\\f\\r ]+)([\\t\\n\\f\\r ]*)([^,]*)(,|$)");
+
+    private static final RewriteEngine ENGINE = (reference, baseURI, contextPath) -> "http://cdn.example.com" + reference;
+
+    private static final int IMAGES = 200;
+    private static final int RUNS = 200;
+
+    private static String srcset() {
+        StringBuilder result;
+
+        result = new StringBuilder();
+        for (int w = 320; w <= 2560; w += 160) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append("/img/products/teaser-").append(w).append(".webp ").append(w).append('w');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testProcessor() throws IOException {
+        String page;
+        StringBuilder builder;
+        HtmlProcessor processor;
+        StringWriter out;
+
+        builder = new StringBuilder();
+        for (int i = 0; i < IMAGES; i++) {
+            builder.append("<div class='teaser'><img alt='teaser' srcset='").append(srcset()).append("' sizes='100vw'></div>\n");
+        }
+        page = builder.toString();
+        long t0 = System.currentTimeMillis();
+        for (int x = 0; x < RUNS; x++) {
+            processor = new HtmlProcessor();
+            processor.setRewriteEngine(ENGINE, URI.create("http://localhost/"), "/");
+            out = new StringWriter(page.length() * 2);
+            processor.setWriter(out);
+            processor.process(page, 0, page.length());
+            processor.flush();
+        }
+        long t1 = System.currentTimeMillis();
+        long t = t1 - t0;
+        System.out.println("HtmlProcessor: t=" + t + ", " + (1000L * page.length() * RUNS / Math.max(t, 1)) + " chars/s");
+    }
+
+    @Test
+    public void testRegex() {
+        String srcset;
+        StringBuffer replacement;
+        Matcher elements;
+        String url;
+
+        srcset = srcset();
+        long t0 = System.currentTimeMillis();
+        for (int x = 0; x < RUNS * IMAGES; x++) {
+            elements = SRCSET_PATTERN.matcher(srcset);
+            replacement = new StringBuffer();
+            while (elements.find()) {
+                url = elements.group(2);
+                if (!url.startsWith("data:")) {
+                    url = ENGINE.rewrite(url, null, "/");
+                }
+                elements.appendReplacement(replacement, elements.group(1) + url + elements.group(3) + elements.group(4) + elements.group(5));
+            }
+            elements.appendTail(replacement);
+        }
+        long t1 = System.currentTimeMillis();
+        long t = t1 - t0;
+        System.out.println("regex srcset only: t=" + t + ", " + (1000L * srcset.length() * RUNS * IMAGES / Math.max(t, 1)) + " chars/s");
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IndexPoolTest {
+    @Test
+    public void share() {
+        IndexPool pool;
+        Index first;
+        Index second;
+
+        pool = new IndexPool();
+        first = index("a.png", "b.png");
+        second = index("b.png", "c.png");
+        pool.intern(first);
+        pool.intern(second);
+        assertEquals(2, pool.getIndexes());
+        assertTrue(pool.getSavedBytes() > 0, "value of b.png already interned");
+        assertEquals(index("a.png", "b.png"), first);
+        assertEquals(index("b.png", "c.png"), second);
+
+        pool.release(second);
+        assertEquals(1, pool.getIndexes());
+        pool.release(first);
+        assertEquals(0, pool.getIndexes());
+        assertEquals(0, pool.getSavedBytes());
+        assertThrows(IllegalStateException.class, () -> pool.release(first));
+    }
+
+    @Test
+    public void releaseDoesNotTouchIndex() throws Exception {
+        IndexPool pool;
+        Index index;
+        Index other;
+        AtomicBoolean done;
+        ExecutorService executor;
+        Future<Integer> misses;
+
+        pool = new IndexPool();
+        index = index("a.png", "b.png", "c.png");
+        pool.intern(index);
+        done = new AtomicBoolean(false);
+        executor = Executors.newSingleThreadExecutor();
+        try {
+            misses = executor.submit(() -> {
+                int result;
+
+                result = 0;
+                while (!done.get()) {
+                    for (String path : new String[] { "a.png", "b.png", "c.png" }) {
+                        if (index.lookup(path) == null) {
+                            result++;
+                        }
+                    }
+                }
+                return result;
+            });
+            for (int i = 0; i < 1000; i++) {
+                other = index("a.png", Integer.toString(i));
+                pool.intern(other);
+                if (i == 500) {
+                    pool.release(index);
+                }
+                pool.release(other);
+            }
+            done.set(true);
+            assertEquals(0, (int) misses.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(index("a.png", "b.png", "c.png"), index);
+    }
+
+    private static Index index(String... paths) {
+        Index result;
+
+        result = new Index();
+        for (String path : paths) {
+            result.add(new Label(path, new String("x/" + path), Util.md5(path.getBytes())));
+        }
+        return result;
+    }
+}
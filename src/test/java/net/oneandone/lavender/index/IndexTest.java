@@ -21,6 +21,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -116,4 +117,31 @@ public class IndexTest {
         });
     }
 
+    @Test
+    public void testDigest() throws Exception {
+        Index loaded;
+        Index other;
+
+        loaded = Index.load(indexFile);
+        assertTrue(Arrays.equals(index.digest(), loaded.digest()));
+        other = new Index();
+        other.add(new Label("img/close.gif", "app/ABCDEF1234567890-close.gif", Hex.decode("abcdef1234567891".toCharArray())));
+        assertFalse(Arrays.equals(index.digest(), other.digest()));
+    }
+
+    @Test
+    public void testCanonical() throws Exception {
+        Index other;
+
+        index.add(new Label("a b=c.gif", "app/x.gif", Hex.decode("abcdef1234567890".toCharArray())));
+        other = new Index();
+        other.add(new Label("a b=c.gif", "app/x.gif", Hex.decode("abcdef1234567890".toCharArray())));
+        other.add(new Label("img/close.gif", "app/ABCDEF1234567890-close.gif", Hex.decode("abcdef1234567890".toCharArray())));
+        assertEquals("a\\ b\\=c.gif=app/x.gif\\:abcdef1234567890\nimg/close.gif=app/ABCDEF1234567890-close.gif\\:abcdef1234567890\n",
+                index.canonical());
+        assertEquals(index.canonical(), other.canonical());
+        index.save(indexFile);
+        assertEquals(index.canonical(), indexFile.readString());
+        assertEquals(index, Index.load(indexFile));
+    }
 }
@@ -15,7 +15,11 @@
  */
 package net.oneandone.lavender.modules;
 
+import net.oneandone.lavender.config.Connection;
+import net.oneandone.lavender.config.Docroot;
 import net.oneandone.lavender.index.Index;
+import net.oneandone.lavender.index.Label;
+import net.oneandone.lavender.index.Util;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
 import net.oneandone.sushi.fs.file.FileNode;
@@ -23,10 +27,14 @@ import net.oneandone.sushi.fs.filter.Predicate;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class DistributorTest {
     @Test
@@ -56,4 +64,36 @@ public class DistributorTest {
         index = distributor.close();
         assertEquals("264/5cfe2cb0a569e7d3daa64ebb35e26/foo/vi_login_now.jpg", index.lookup("vi_login_now.jpg").getLavendelizedPath());
     }
+
+    @Test
+    public void open() throws IOException {
+        World world;
+        FileNode first;
+        FileNode second;
+        Docroot docroot;
+        List<Connection> connections;
+        Index index;
+
+        world = World.createMinimal();
+        first = world.getTemp().createTempDirectory();
+        second = world.getTemp().createTempDirectory();
+        docroot = new Docroot("root", new ArrayList<>(), "docs", "indexes");
+        connections = Arrays.asList(Connection.openSimple(null, first), Connection.openSimple(null, second));
+        assertEquals(0, Distributor.open(world.getTemp().createTempDirectory(), connections, docroot, "a.idx").close().size());
+
+        index = new Index();
+        index.add(new Label("a.png", "x/a.png", Util.md5("a".getBytes())));
+        index.save(first.join("indexes/a.idx"));
+        index.save(second.join("indexes/a.idx"));
+        assertEquals(first.join("indexes/a.idx").md5(), second.join("indexes/a.idx").md5());
+        Distributor.open(world.getTemp().createTempDirectory(), connections, docroot, "a.idx");
+
+        // saved by older versions
+        second.join("indexes/a.idx").writeString("#Mon Oct 19 12:00:00 CEST 2020\n" + index.canonical());
+        Distributor.open(world.getTemp().createTempDirectory(), connections, docroot, "a.idx");
+
+        index.add(new Label("b.png", "x/b.png", Util.md5("b".getBytes())));
+        index.save(second.join("indexes/a.idx"));
+        assertThrows(IOException.class, () -> Distributor.open(world.getTemp().createTempDirectory(), connections, docroot, "a.idx"));
+    }
 }
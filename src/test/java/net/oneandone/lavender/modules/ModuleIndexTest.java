@@ -0,0 +1,119 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import net.oneandone.sushi.fs.Node;
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.filter.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModuleIndexTest {
+    private static World WORLD;
+
+    static {
+        try {
+            WORLD = World.create(false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void lookup() {
+        Module<?> foo;
+        Module<?> foobar;
+        Module<?> bar;
+        Module<?> webapp;
+        ModuleIndex index;
+
+        foo = module("foo", "modules/foo/", new Filter().includeAll());
+        foobar = module("foobar", "modules/foobar/", new Filter().includeAll());
+        bar = module("bar", "modules/bar/", new Filter().includeAll());
+        webapp = module("webapp", "", new Filter().includeAll());
+        index = new ModuleIndex(Arrays.asList(foo, foobar, bar, webapp));
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList(foo, webapp), index.lookup("modules/foo/img/a.png"));
+        assertEquals(Arrays.asList(foobar, webapp), index.lookup("modules/foobar/a.png"));
+        assertEquals(Arrays.asList(bar, webapp), index.lookup("modules/bar/"));
+        assertEquals(Collections.singletonList(webapp), index.lookup("modules/ba"));
+        assertEquals(Collections.singletonList(webapp), index.lookup(""));
+    }
+
+    @Test
+    public void lookupPreservesOrder() {
+        Module<?> webapp;
+        Module<?> first;
+        Module<?> second;
+
+        webapp = module("webapp", "", new Filter().includeAll());
+        first = module("first", "a/", new Filter().includeAll());
+        second = module("second", "a/", new Filter().includeAll());
+        assertEquals(Arrays.asList(webapp, first, second), new ModuleIndex(Arrays.asList(webapp, first, second)).lookup("a/b.png"));
+    }
+
+    @Test
+    public void lookupNothing() {
+        List<Module> modules;
+
+        modules = Collections.singletonList(module("foo", "foo/", new Filter().includeAll()));
+        assertTrue(new ModuleIndex(modules).lookup("bar/a.png").isEmpty());
+        assertTrue(new ModuleIndex(modules).lookup("fo").isEmpty());
+        assertTrue(new ModuleIndex(Collections.emptyList()).lookup("foo/a.png").isEmpty());
+    }
+
+    @Test
+    public void matchesSuffixes() throws IOException {
+        Module<?> module;
+
+        module = module("foo", "foo/", ModuleProperties.defaultFilter());
+        assertEquals("img/a.png", module.matches("foo/img/a.png"));
+        assertEquals("a.min.js", module.matches("foo/a.min.js"));
+        assertNull(module.matches("foo/a.png.html"));
+        assertNull(module.matches("foo/png"));
+        assertNull(module.matches("bar/a.png"));
+        assertNotNull(module.probe("foo/img/a.png"));
+        assertNull(module.probe("foo/img/a.txt"));
+
+        module = module("foo", "foo/", new Filter().include("**/*.png").exclude("img/**/*"));
+        assertNull(module.matches("foo/img/a.png"));
+        assertEquals("b/a.png", module.matches("foo/b/a.png"));
+    }
+
+    private static Module<?> module(String name, String prefix, Filter filter) {
+        return new NodeModule("mem://" + name, Module.TYPE, name, false, prefix, "", filter) {
+            @Override
+            protected Map<String, Node> loadEntries() throws IOException {
+                Map<String, Node> result;
+
+                result = new HashMap<>();
+                result.put("img/a.png", WORLD.memoryNode("x"));
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StalenessCheckTest {
+    @Test
+    public void coalesce() throws Exception {
+        AtomicInteger counter;
+        StalenessCheck<Integer> check;
+        ExecutorService executor;
+        List<Future<Integer>> results;
+
+        counter = new AtomicInteger();
+        check = new StalenessCheck<>(counter::incrementAndGet, 60000);
+        executor = Executors.newFixedThreadPool(20);
+        try {
+            results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(check::get));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(1, (int) result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, (int) check.get());
+        }
+        assertEquals(1, check.getQueries());
+    }
+
+    @Test
+    public void expire() throws Exception {
+        AtomicInteger counter;
+        StalenessCheck<Integer> check;
+
+        counter = new AtomicInteger();
+        check = new StalenessCheck<>(counter::incrementAndGet, 0);
+        assertEquals(1, (int) check.get());
+        Thread.sleep(5);
+        assertEquals(2, (int) check.get());
+        assertEquals(2, check.getQueries());
+    }
+
+    @Test
+    public void failuresAreNotCached() throws Exception {
+        AtomicInteger counter;
+        StalenessCheck<Integer> check;
+
+        counter = new AtomicInteger();
+        check = new StalenessCheck<>(() -> {
+            if (counter.incrementAndGet() == 1) {
+                throw new IOException("connection refused");
+            }
+            return counter.get();
+        }, 60000);
+        assertThrows(IOException.class, check::get);
+        assertEquals(2, (int) check.get());
+        assertEquals(2, (int) check.get());
+        assertEquals(1, check.getQueries());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import net.oneandone.sushi.fs.filter.Filter;
+import org.junit.jupiter.api.Test;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SvnModuleTest {
+    private static final String MODULE = "/trunk/src/main/webapp";
+
+    @Test
+    public void applyChanges() {
+        Map<String, SvnEntry> entries;
+
+        entries = entries("img/a.png", "img/b.png", "css/main.css", "css/print.css");
+        assertTrue(apply(entries, 5,
+                change("/trunk/src/main/webapp/img/a.png", SVNLogEntryPath.TYPE_MODIFIED, SVNNodeKind.FILE),
+                change("/trunk/src/main/webapp/img/c.png", SVNLogEntryPath.TYPE_ADDED, SVNNodeKind.FILE),
+                change("/trunk/src/main/webapp/img/c.txt", SVNLogEntryPath.TYPE_ADDED, SVNNodeKind.FILE),
+                change("/trunk/src/main/webapp/img/new", SVNLogEntryPath.TYPE_ADDED, SVNNodeKind.DIR),
+                change("/trunk/src/main/webapp/img/b.png", SVNLogEntryPath.TYPE_DELETED, SVNNodeKind.NONE),
+                change("/trunk/src/main/webapp/css", SVNLogEntryPath.TYPE_DELETED, SVNNodeKind.NONE),
+                change("/trunk/src/main/webapp", SVNLogEntryPath.TYPE_MODIFIED, SVNNodeKind.DIR),
+                change("/trunk/pom.xml", SVNLogEntryPath.TYPE_MODIFIED, SVNNodeKind.FILE)));
+        assertEquals("[img/a.png 5, img/c.png 5]", toString(entries));
+    }
+
+    @Test
+    public void fallback() {
+        assertFalse(apply(entries(), 2, change("/trunk/src/main/webapp/img", SVNLogEntryPath.TYPE_REPLACED, SVNNodeKind.DIR)));
+        assertFalse(apply(entries(), 2, change("/trunk/src/main/webapp/img/a.png", SVNLogEntryPath.TYPE_ADDED, SVNNodeKind.UNKNOWN)));
+        assertFalse(apply(entries(), 2, change("/trunk/src", SVNLogEntryPath.TYPE_DELETED, SVNNodeKind.DIR)));
+        assertFalse(apply(entries(), 2, new SVNLogEntryPath("/trunk/src/main/webapp/img/a.png", SVNLogEntryPath.TYPE_ADDED,
+                "/branches/x/a.png", 1, SVNNodeKind.FILE)));
+    }
+
+    private static boolean apply(Map<String, SvnEntry> entries, long revision, SVNLogEntryPath... changes) {
+        return SvnModule.applyChanges(entries, MODULE, revision, Arrays.asList(changes), new Filter().include("**/*.png", "**/*.css"), null);
+    }
+
+    private static SVNLogEntryPath change(String path, char type, SVNNodeKind kind) {
+        return new SVNLogEntryPath(path, type, null, -1, kind);
+    }
+
+    private static Map<String, SvnEntry> entries(String... paths) {
+        Map<String, SvnEntry> result;
+
+        result = new TreeMap<>();
+        for (String path : paths) {
+            result.put(path, new SvnEntry(path, path, 1));
+        }
+        return result;
+    }
+
+    private static String toString(Map<String, SvnEntry> entries) {
+        StringBuilder result;
+
+        result = new StringBuilder();
+        for (SvnEntry entry : entries.values()) {
+            result.append(result.length() == 0 ? "[" : ", ").append(entry.publicPath).append(' ').append(entry.revision);
+        }
+        return result.append(']').toString();
+    }
+}
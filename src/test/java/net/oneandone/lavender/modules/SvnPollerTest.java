@@ -0,0 +1,167 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.lavender.modules;
+
+import org.junit.jupiter.api.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SvnPollerTest {
+    private static final String MODULE = "/trunk/src/main/webapp";
+
+    @Test
+    public void isChanged() throws SVNException {
+        SvnPoller poller;
+
+        poller = poller(1);
+        poller.record(10, null);
+        assertTrue(poller.isChanged(MODULE, 9, 10), "before the first poll");
+        assertFalse(poller.isChanged(MODULE, 10, 10));
+        poller.record(14, Arrays.asList(
+                entry(11, change("/trunk/pom.xml", SVNLogEntryPath.TYPE_MODIFIED)),
+                entry(12, change("/trunk/src/main/webapp/img/a.png", SVNLogEntryPath.TYPE_ADDED)),
+                entry(13, change("/trunk/src", SVNLogEntryPath.TYPE_MODIFIED)),
+                entry(14, change("/trunk/src", SVNLogEntryPath.TYPE_REPLACED))));
+        assertFalse(poller.isChanged(MODULE, 10, 11));
+        assertTrue(poller.isChanged(MODULE, 10, 12));
+        assertFalse(poller.isChanged(MODULE, 12, 13), "property change of a parent");
+        assertTrue(poller.isChanged(MODULE, 13, 14));
+        assertFalse(poller.isChanged("/trunk/src/main/webapp2", 10, 13));
+        assertTrue(poller.isChanged(MODULE, 14, 15), "after head");
+
+        poller.record(20, null);
+        assertTrue(poller.isChanged(MODULE, 14, 20), "log failed");
+        assertFalse(poller.isChanged(MODULE, 20, 20));
+    }
+
+    @Test
+    public void sessions() throws Exception {
+        SvnPoller poller;
+        SVNRepository first;
+        SVNRepository second;
+        AtomicReference<SVNRepository> third;
+        Thread thread;
+
+        poller = poller(2);
+        first = poller.acquire();
+        second = poller.acquire();
+        assertNotSame(first, second);
+        poller.release(first);
+        assertSame(first, poller.acquire());
+
+        third = new AtomicReference<>();
+        thread = new Thread(() -> {
+            try {
+                third.set(poller.acquire());
+            } catch (SVNException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join(200);
+        assertNull(third.get(), "pool exhausted");
+        poller.release(second);
+        thread.join(5000);
+        assertNotNull(third.get());
+        assertSame(second, third.get());
+    }
+
+    @Test
+    public void close() throws SVNException {
+        SvnPoller poller;
+        SVNRepository session;
+
+        poller = poller(2);
+        session = poller.acquire();
+        poller.release(poller.acquire());
+        poller.close();
+        poller.release(session);
+        assertThrows(IllegalStateException.class, poller::acquire);
+    }
+
+    @Test
+    public void references() throws SVNException {
+        SvnPoller.Key key;
+        SVNURL url;
+        SvnPoller poller;
+        SvnPoller next;
+
+        key = new SvnPoller.Key("http://localhost/svn/references", null, null);
+        url = SVNURL.parseURIEncoded("http://localhost/svn/references");
+        poller = SvnPoller.forKey(key, url, null);
+        assertSame(poller, SvnPoller.forKey(key, url, null));
+        poller.close();
+        poller.release(poller.acquire());
+        poller.close();
+        assertThrows(IllegalStateException.class, poller::acquire);
+        next = SvnPoller.forKey(key, url, null);
+        assertNotSame(poller, next);
+        next.close();
+    }
+
+    @Test
+    public void key() {
+        ISVNAuthenticationManager first;
+        ISVNAuthenticationManager second;
+
+        first = BasicAuthenticationManager.newInstance("a", "x".toCharArray());
+        second = BasicAuthenticationManager.newInstance("b", "y".toCharArray());
+        assertEquals(new SvnPoller.Key("http://svn/repo", null, first), new SvnPoller.Key("http://svn/repo", null, first));
+        assertNotEquals(new SvnPoller.Key("http://svn/repo", null, first), new SvnPoller.Key("http://svn/repo", null, second));
+        assertEquals(new SvnPoller.Key("http://svn/repo", "a:x", first), new SvnPoller.Key("http://svn/repo", "a:x", second));
+        assertNotEquals(new SvnPoller.Key("http://svn/repo", "a:x", first), new SvnPoller.Key("http://svn/repo", "b:y", first));
+        assertNotEquals(new SvnPoller.Key("http://svn/repo", null, first), new SvnPoller.Key("http://svn/other", null, first));
+    }
+
+    private static SvnPoller poller(int sessions) throws SVNException {
+        return new SvnPoller(SVNURL.parseURIEncoded("http://localhost/svn/repo"), null, 1000, sessions);
+    }
+
+    private static SVNLogEntry entry(long revision, SVNLogEntryPath... changes) {
+        Map<String, SVNLogEntryPath> paths;
+
+        paths = new HashMap<>();
+        for (SVNLogEntryPath change : changes) {
+            paths.put(change.getPath(), change);
+        }
+        return new SVNLogEntry(paths, revision, "author", null, "message");
+    }
+
+    private static SVNLogEntryPath change(String path, char type) {
+        return new SVNLogEntryPath(path, type, null, -1, SVNNodeKind.DIR);
+    }
+}